@@ -0,0 +1,13 @@
+-- Progress of Tool.ArchiveMover (created by the tool if missing).
+-- One row per archive run (cutoff_date) and unit of work; done = 1 units are skipped on resume.
+CREATE TABLE IF NOT EXISTS archive_checkpoint
+(
+    cutoff_date DATE        NOT NULL,
+    table_name  VARCHAR(64) NOT NULL,
+    symbol      VARCHAR(20) NOT NULL,
+    Cycle_Range VARCHAR(50) NOT NULL,
+    rows_moved  BIGINT      NOT NULL DEFAULT 0,
+    done        TINYINT(1)  NOT NULL DEFAULT 0,
+    updated_at  TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (cutoff_date, table_name, symbol, Cycle_Range)
+);
@@ -0,0 +1,11 @@
+-- Stages committed per symbol and cycle (apicall.CollectCheckpoint): 1 = market_data, 2 = option chains,
+-- 4 = volatility. BarchartCollect skips complete symbols and resumes partial ones after a restart.
+CREATE TABLE collect_checkpoint
+(
+    update_date DATE        NOT NULL,
+    Cycle_Range VARCHAR(50) NOT NULL,
+    symbol      VARCHAR(20) NOT NULL,
+    stage_mask  TINYINT     NOT NULL DEFAULT 0,
+    updated_at  TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (update_date, Cycle_Range, symbol)
+);
@@ -0,0 +1,20 @@
+-- Shared per-cycle work queue (apicall.WorkQueue): one row per symbol of a list ('all' / 'priority'),
+-- seeded by every collector node with INSERT IGNORE and claimed in batches with FOR UPDATE SKIP LOCKED.
+-- state: 0 pending, 1 leased (not started), 2 running, 3 done, 4 failed after queue.maxAttempts leases.
+CREATE TABLE collect_work_queue
+(
+    queue_name  VARCHAR(20)  NOT NULL,
+    update_date DATE         NOT NULL,
+    Cycle_Range VARCHAR(50)  NOT NULL,
+    symbol      VARCHAR(20)  NOT NULL,
+    seq         INT          NOT NULL,
+    state       TINYINT      NOT NULL DEFAULT 0,
+    lease_owner VARCHAR(100) NULL,
+    lease_until DATETIME(3)  NULL,
+    attempts    INT          NOT NULL DEFAULT 0,
+    PRIMARY KEY (queue_name, update_date, Cycle_Range, symbol),
+    KEY idx_claim (queue_name, update_date, Cycle_Range, state, seq)
+);
+
+-- Old cycles are only history, keep a week
+-- DELETE FROM collect_work_queue WHERE update_date < CURDATE() - INTERVAL 7 DAY;
@@ -26,3 +26,8 @@ CREATE TABLE market_data
     Base_Lower_Price    DECIMAL(10, 4) NULL,
     PRIMARY KEY (symbol, Cycle_Range, expiration_date, expiration_type, update_date)
 );
+
+-- VolatilityWriter stamps one snapshot: WHERE symbol = ? AND Cycle_Range = ? AND update_date = ?.
+-- The primary key only narrows that to (symbol, Cycle_Range), i.e. every expiration of every retained day.
+CREATE INDEX idx_market_data_symbol_cycle_update
+    ON market_data (symbol, Cycle_Range, update_date);
@@ -26,3 +26,7 @@ CREATE TABLE market_data_archive
     Base_Lower_Price    DECIMAL(10, 4) NULL,
     PRIMARY KEY (symbol, Cycle_Range, expiration_date, expiration_type, update_date)
 );
+
+-- Same name and columns as on market_data: EXCHANGE PARTITION (Tool.PartitionManager) needs identical indexes
+CREATE INDEX idx_market_data_symbol_cycle_update
+    ON market_data_archive (symbol, Cycle_Range, update_date);
@@ -1,22 +1,47 @@
-CREATE OR REPLACE VIEW market_data_symbol_summary AS
-SELECT
-    symbol,
-    Cycle_Range,
-    SUM(Put_Vol) AS put_vol_total,
-    SUM(Call_Vol) AS call_vol_total,
-    CASE
-        WHEN SUM(Call_Vol) = 0 THEN NULL
-        ELSE ROUND(SUM(Put_Vol) / SUM(Call_Vol), 4)
-        END AS put_call_vol_ratio,
-    SUM(Put_OI) AS put_open_interest_total,
-    SUM(Call_OI) AS call_open_interest_total,
-    CASE
-        WHEN SUM(Call_OI) = 0 THEN NULL
-        ELSE ROUND(SUM(Put_OI) / SUM(Call_OI), 4)
-        END AS put_call_open_interest_ratio,
-    MAX(IV) AS IV,
-    MAX(Historic_Volatility) AS Historic_Volatility,
-    MAX(IV_Rank) AS IV_Rank,
-    MAX(IV_Percentile) AS IV_Percentile
-FROM market_data
-GROUP BY symbol, Cycle_Range;
+-- Materialized per symbol / cycle summary, maintained by the collector (apicall.MarketDataWriter /
+-- VolatilityWriter) in the same transaction as the market_data rows. Reads are primary-key lookups.
+-- Holds the latest update_date snapshot of each (symbol, Cycle_Range); the old view summed every day
+-- still in market_data for that cycle.
+DROP VIEW IF EXISTS market_data_symbol_summary;
+
+CREATE TABLE market_data_symbol_summary
+(
+    symbol                       VARCHAR(20)    NOT NULL,
+    Cycle_Range                  VARCHAR(50)    NOT NULL,
+    update_date                  DATE           NOT NULL,
+    update_time                  TIME           NOT NULL,
+    put_vol_total                BIGINT         NULL,
+    call_vol_total               BIGINT         NULL,
+    put_call_vol_ratio           DECIMAL(10, 4) NULL,
+    put_open_interest_total      BIGINT         NULL,
+    call_open_interest_total     BIGINT         NULL,
+    put_call_open_interest_ratio DECIMAL(10, 4) NULL,
+    IV                           DECIMAL(10, 4) NULL,
+    Historic_Volatility          DECIMAL(10, 4) NULL,
+    IV_Rank                      DECIMAL(10, 4) NULL,
+    IV_Percentile                DECIMAL(10, 4) NULL,
+    PRIMARY KEY (symbol, Cycle_Range)
+);
+
+-- One-time backfill from the latest day of each symbol / cycle
+INSERT INTO market_data_symbol_summary
+SELECT m.symbol,
+       m.Cycle_Range,
+       m.update_date,
+       MAX(m.update_time),
+       SUM(m.Put_Vol),
+       SUM(m.Call_Vol),
+       CASE WHEN SUM(m.Call_Vol) = 0 THEN NULL ELSE ROUND(SUM(m.Put_Vol) / SUM(m.Call_Vol), 4) END,
+       SUM(m.Put_OI),
+       SUM(m.Call_OI),
+       CASE WHEN SUM(m.Call_OI) = 0 THEN NULL ELSE ROUND(SUM(m.Put_OI) / SUM(m.Call_OI), 4) END,
+       MAX(m.IV),
+       MAX(m.Historic_Volatility),
+       MAX(m.IV_Rank),
+       MAX(m.IV_Percentile)
+FROM market_data m
+         JOIN (SELECT symbol, Cycle_Range, MAX(update_date) AS update_date
+               FROM market_data
+               GROUP BY symbol, Cycle_Range) latest
+              ON latest.symbol = m.symbol AND latest.Cycle_Range = m.Cycle_Range AND latest.update_date = m.update_date
+GROUP BY m.symbol, m.Cycle_Range, m.update_date;
@@ -0,0 +1,52 @@
+-- Date-partitioned live tables, managed by Tool.PartitionManager (replaces move_expired_*.sql events).
+--
+-- One-time conversion (maintenance window, each table is rebuilt once; --dry-run prints the DDL):
+--   java -cp barchart.jar Tool.PartitionManager init
+-- Nightly (Deploy/crontab-all.txt, 00:30):
+--   java -cp barchart.jar Tool.PartitionManager run
+--
+-- What init does:
+DROP EVENT IF EXISTS move_expired_market_data;
+DROP EVENT IF EXISTS move_expired_option_chain_data;
+
+-- Partitioned InnoDB tables cannot have foreign keys. Both tables rotate on the same day boundaries,
+-- so the ON DELETE CASCADE is replaced by dropping the matching partitions.
+ALTER TABLE option_chain_data DROP FOREIGN KEY fk_option_chain_market;
+
+ALTER TABLE option_chain_data MODIFY expiration_date DATE NOT NULL;
+ALTER TABLE option_chain_data PARTITION BY RANGE COLUMNS (expiration_date) (
+    PARTITION p_history VALUES LESS THAN ('<today>'),
+    PARTITION p20261019 VALUES LESS THAN ('2026-10-20'),   -- one per weekday through the month partition.dailyDays reaches
+    -- ...
+    PARTITION p20261130 VALUES LESS THAN ('2026-12-01'),
+    PARTITION m20261231 VALUES LESS THAN ('2027-01-01'),   -- then one per month up to partition.horizonDays
+    -- ...
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+-- market_data: same two statements.
+
+-- Archive tables: same column type, same index names (EXCHANGE PARTITION compares them), and a
+-- partition per archived day, carved out of an always-empty pmax.
+ALTER TABLE market_archive.option_chain_data_archive
+    RENAME INDEX idx_option_chain_archive_symbol_exp_contract TO idx_option_chain_symbol_exp_contract;
+ALTER TABLE market_archive.option_chain_data_archive MODIFY expiration_date DATE NOT NULL;
+ALTER TABLE market_archive.option_chain_data_archive PARTITION BY RANGE COLUMNS (expiration_date) (
+    PARTITION p_history VALUES LESS THAN ('<today>'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- What run does for each expired partition (bound <= today), option_chain_data first:
+--   CREATE TABLE market_archive.option_chain_data_xchg LIKE option_chain_data;
+--   ALTER TABLE market_archive.option_chain_data_xchg REMOVE PARTITIONING;
+--   ALTER TABLE option_chain_data EXCHANGE PARTITION p20261016 WITH TABLE market_archive.option_chain_data_xchg WITHOUT VALIDATION;
+--   ALTER TABLE market_archive.option_chain_data_archive REORGANIZE PARTITION pmax INTO (
+--       PARTITION p20261016 VALUES LESS THAN ('2026-10-17'), PARTITION pmax VALUES LESS THAN (MAXVALUE));
+--   ALTER TABLE market_archive.option_chain_data_archive EXCHANGE PARTITION p20261016 WITH TABLE market_archive.option_chain_data_xchg WITHOUT VALIDATION;
+--   ALTER TABLE option_chain_data DROP PARTITION p20261016;
+--   DROP TABLE market_archive.option_chain_data_xchg;
+-- then, per live table: REORGANIZE the month the daily window enters into weekday partitions (copies that
+-- month's rows once), merge weekday partitions past the window into months (one-time, for tables that were
+-- partitioned daily up to the horizon), and REORGANIZE pmax to add months up to the horizon.
+-- A run that died after the first EXCHANGE leaves the day only in *_xchg. The next run archives a non-empty
+-- *_xchg before anything else (exchange when the range and an empty archive partition allow, else
+-- INSERT IGNORE), drops the live partition only once it is empty, and only then drops *_xchg.
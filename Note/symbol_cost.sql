@@ -0,0 +1,12 @@
+-- Per-symbol collection cost (apicall.SymbolScheduler): moving average of the wall time of a full
+-- market_data + chains collection, with the expiration count of the last one. deferred = 1 puts the
+-- symbol ahead of the longest-first order in the next run.
+CREATE TABLE symbol_cost
+(
+    symbol      VARCHAR(20) NOT NULL,
+    expirations INT         NOT NULL DEFAULT 0,
+    avg_millis  BIGINT      NOT NULL,
+    deferred    TINYINT(1)  NOT NULL DEFAULT 0,
+    updated_at  TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (symbol)
+);
@@ -0,0 +1,13 @@
+-- Per-day (per-cycle) volatility history written by apicall.VolatilityWriter.
+-- market_data only gets these values on the rows of the snapshot they were fetched for.
+CREATE TABLE symbol_volatility_daily
+(
+    symbol              VARCHAR(20)    NOT NULL,
+    update_date         DATE           NOT NULL,
+    Cycle_Range         VARCHAR(50)    NOT NULL,
+    update_time         TIME           NOT NULL,
+    Historic_Volatility DECIMAL(10, 4) NULL,
+    IV_Rank             DECIMAL(10, 4) NULL,
+    IV_Percentile       DECIMAL(10, 4) NULL,
+    PRIMARY KEY (symbol, update_date, Cycle_Range)
+);
@@ -0,0 +1,53 @@
+package apicall;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Row binding of a decoded chain, for both ingest modes: multi-row upsert parameters and LOAD DATA TSV
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BindBenchmark {
+
+    private static final int COLUMNS = 28;
+
+    @Param({"small", "medium", "large"})
+    public String chainSize;
+
+    private OptionChainWriter.ChainSnapshot chain;
+    private SinkPreparedStatement stmt;
+
+    @Setup
+    public void load() throws IOException {
+        List<BarchartJsonDecoder.OptionQuote> quotes = BarchartJsonDecoder.decodeOptionChain(
+                new ByteArrayInputStream(Fixtures.load("options-chain-" + chainSize + ".json")));
+        chain = new OptionChainWriter.ChainSnapshot("SPY", "Khung 2: 10:06 – 10:35", "2026-11-20", "monthly",
+                Date.valueOf("2026-10-16"), Time.valueOf("10:36:00"), quotes);
+        stmt = new SinkPreparedStatement(COLUMNS * quotes.size());
+    }
+
+    @Benchmark
+    public SinkPreparedStatement multiRowBind() throws SQLException {
+        int offset = 0;
+        for (BarchartJsonDecoder.OptionQuote quote : chain.quotes()) {
+            OptionChainWriter.bindRow(stmt, offset, chain, quote);
+            offset += COLUMNS;
+        }
+        return stmt;
+    }
+
+    @Benchmark
+    public byte[] loadDataTsv() {
+        return OptionChainWriter.toTsv(List.of(chain));
+    }
+}
@@ -0,0 +1,47 @@
+package apicall;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.Time;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Streaming decode of options-expirations (the saveToDatabase input) and options/get chains of three sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String chainSize;
+
+    private byte[] expirations;
+    private byte[] chain;
+    private final Date updateDate = Date.valueOf("2026-10-16");
+    private final Time updateTime = Time.valueOf("10:36:00");
+
+    @Setup
+    public void load() {
+        expirations = Fixtures.load("options-expirations.json");
+        chain = Fixtures.load("options-chain-" + chainSize + ".json");
+    }
+
+    // Decode plus the snapshot saveToDatabase hands to the writer
+    @Benchmark
+    public MarketDataWriter.MarketDataSnapshot expirations() throws IOException {
+        List<BarchartJsonDecoder.ExpirationQuote> quotes =
+                BarchartJsonDecoder.decodeExpirations(new ByteArrayInputStream(expirations), "SPY");
+        return new MarketDataWriter.MarketDataSnapshot("SPY", "Khung 2: 10:06 – 10:35", updateDate, updateTime, quotes);
+    }
+
+    @Benchmark
+    public List<BarchartJsonDecoder.OptionQuote> optionChain() throws IOException {
+        return BarchartJsonDecoder.decodeOptionChain(new ByteArrayInputStream(chain));
+    }
+}
@@ -0,0 +1,59 @@
+package apicall;
+
+import Util.NumberParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The formatted values Barchart sends: thousands separators, signs, percents, blanks
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumberParserBenchmark {
+
+    private final String[] doubles = {"582.35", "0.4567", "-0.1234", "+1.25", "12,345.50", "0.00", "", "N/A"};
+    private final String[] ints = {"1,234", "0", "987,654", "35", "12", "", "1,234,567", "7"};
+    private final String[] percents = {"18.42%", "14.97%", "0.00%", "123.45%"};
+    // The decoder's case: values sit in the JSON parser's char buffer
+    private final char[] buffer = String.join("", doubles).toCharArray();
+    private final int[] offsets = new int[doubles.length + 1];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < doubles.length; i++) offsets[i + 1] = offsets[i] + doubles[i].length();
+    }
+
+    @Benchmark
+    public double parseDouble() {
+        double sum = 0;
+        for (String s : doubles) sum += NumberParser.parseDoubleSafe(s);
+        return sum;
+    }
+
+    @Benchmark
+    public double parseDoubleChars() {
+        double sum = 0;
+        for (int i = 0; i < doubles.length; i++) {
+            double v = NumberParser.parseDouble(buffer, offsets[i], offsets[i + 1] - offsets[i]);
+            if (!Double.isNaN(v)) sum += v;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long parseInt() {
+        long sum = 0;
+        for (String s : ints) sum += NumberParser.parseIntSafe(s);
+        return sum;
+    }
+
+    @Benchmark
+    public double parseVolatility() {
+        double sum = 0;
+        for (String s : percents) sum += NumberParser.parseVolatility(s);
+        return sum;
+    }
+}
@@ -0,0 +1,47 @@
+package apicall;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// put-call-ratios page: the streaming label scan in BarchartHtmlFetcher against the Jsoup DOM + selector
+// extraction it replaced (kept here as the baseline)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VolatilityBenchmark {
+
+    private byte[] page;
+
+    @Setup
+    public void load() {
+        page = Fixtures.load("put-call-ratios.html");
+    }
+
+    @Benchmark
+    public BarchartHtmlFetcher.Volatility streaming() throws IOException {
+        return BarchartHtmlFetcher.extractVolatility(new ByteArrayInputStream(page));
+    }
+
+    @Benchmark
+    public BarchartHtmlFetcher.Volatility jsoupBaseline() {
+        Document doc = Jsoup.parse(new String(page, StandardCharsets.UTF_8));
+        return new BarchartHtmlFetcher.Volatility(
+                percent(doc.select("span:contains(Historic Volatility:) ~ span strong").first()),
+                percent(doc.select("span:contains(IV Rank:) ~ span strong").first()),
+                percent(doc.select("span:contains(IV Percentile:) ~ span strong").first()));
+    }
+
+    private static double percent(Element element) {
+        return element == null ? 0 : Double.parseDouble(element.text().replace("%", "").replace(",", ""));
+    }
+}
@@ -0,0 +1,107 @@
+#!/usr/bin/env python3
+# Regenerates src/bench/resources/fixtures: Barchart-shaped responses (same fields, formatting and
+# nesting as options-expirations/get, options/get and the put-call-ratios page) with seeded values.
+import json
+import random
+from datetime import date, timedelta
+
+OUT = "src/bench/resources/fixtures/"
+rnd = random.Random(42)
+today = date(2026, 10, 16)
+
+
+def num(v, digits=2, sign=False):
+    s = f"{v:,.{digits}f}"
+    return ("+" + s) if sign and v > 0 else s
+
+
+def pct(v, sign=False):
+    return num(v, 2, sign) + "%"
+
+
+def expirations():
+    rows = []
+    d = today
+    for i in range(32):
+        d = d + timedelta(days=rnd.choice([1, 2, 3, 7]))
+        put_vol, call_vol = rnd.randint(0, 900_000), rnd.randint(0, 900_000)
+        put_oi, call_oi = rnd.randint(0, 3_000_000), rnd.randint(0, 3_000_000)
+        iv = rnd.uniform(10, 60)
+        move = rnd.uniform(0.5, 12)
+        row = {
+            "expirationDate": d.strftime("%m/%d/%y"),
+            "expirationType": "monthly" if i % 4 == 0 else "weekly",
+            "daysToExpiration": str((d - today).days),
+            "putVolume": num(put_vol, 0), "callVolume": num(call_vol, 0), "totalVolume": num(put_vol + call_vol, 0),
+            "putCallVolumeRatio": num(put_vol / max(call_vol, 1)),
+            "putOpenInterest": num(put_oi, 0), "callOpenInterest": num(call_oi, 0),
+            "totalOpenInterest": num(put_oi + call_oi, 0),
+            "putCallOpenInterestRatio": num(put_oi / max(call_oi, 1)),
+            "averageVolatility": pct(iv), "symbolCode": "STK", "symbolType": 1,
+            "lastPrice": "582.35", "dailyLastPrice": "582.35", "baseLastPrice": "582.35",
+            "impliedMove": num(move), "impliedMovePercent": pct(move / 5.82),
+            "baseUpperPrice": num(582.35 + move), "baseLowerPrice": num(582.35 - move),
+        }
+        row["raw"] = {k: (v if not isinstance(v, str) else v.replace(",", "").replace("%", "")) for k, v in row.items()}
+        row["raw"]["impliedMovePercent"] = round(move / 582.35, 6)
+        rows.append(row)
+    return {"count": len(rows), "total": len(rows), "data": rows, "errors": []}
+
+
+def chain(strikes):
+    exp = today + timedelta(days=35)
+    data = {"Call": [], "Put": []}
+    for side, key in (("C", "Call"), ("P", "Put")):
+        for i in range(strikes):
+            strike = 400 + i * 2.5
+            mid = max(0.01, rnd.uniform(0, 60))
+            vol, oi = rnd.randint(0, 40_000), rnd.randint(0, 150_000)
+            row = {
+                "symbol": f"SPY|{exp.strftime('%Y%m%d')}|{strike:.2f}{side}",
+                "baseSymbol": "SPY", "strikePrice": num(strike), "expirationDate": exp.strftime("%m/%d/%y"),
+                "moneyness": pct(rnd.uniform(-30, 30)), "bidPrice": num(mid - 0.05), "midpoint": num(mid),
+                "askPrice": num(mid + 0.05), "lastPrice": num(mid), "priceChange": num(rnd.uniform(-3, 3), 2, True),
+                "percentChange": pct(rnd.uniform(-40, 40), True), "volume": num(vol, 0), "openInterest": num(oi, 0),
+                "openInterestChange": num(rnd.randint(-5000, 5000), 0, True), "volatility": pct(rnd.uniform(8, 90)),
+                "delta": num(rnd.uniform(-1, 1), 4), "gamma": num(rnd.uniform(0, 0.05), 4),
+                "theta": num(rnd.uniform(-1, 0), 4), "vega": num(rnd.uniform(0, 1), 4), "rho": num(rnd.uniform(-1, 1), 4),
+                "volumeOpenInterestRatio": num(vol / max(oi, 1)), "itmProbability": pct(rnd.uniform(0, 100)),
+                "optionType": key, "daysToExpiration": "35", "tradeTime": "10/16/26",
+                "averageVolatility": "18.42%", "historicVolatility30d": "14.97%", "baseNextEarningsDate": "N/A",
+                "dividendExDate": "12/19/26", "baseTimeCode": "", "expirationType": "monthly",
+                "impliedVolatilityRank1y": "23.51%", "symbolCode": "Call" if side == "C" else "Put",
+                "symbolType": 34, "theoretical": num(mid + rnd.uniform(-0.1, 0.1)),
+            }
+            raw = {k: v.replace(",", "").replace("%", "").replace("+", "") if isinstance(v, str) else v
+                   for k, v in row.items()}
+            raw["itmProbability"] = round(rnd.uniform(0, 1), 6)
+            row["raw"] = raw
+            data[key].append(row)
+    return {"count": strikes * 2, "total": strikes * 2, "data": data,
+            "meta": {"expirations": {"weekly": [], "monthly": [exp.strftime("%Y-%m-%d")]},
+                     "field": {"shortName": {}, "description": {}}}}
+
+
+def html():
+    rows = [
+        f'<div class="bc-table-row" data-ng-repeat="row in rows"><span class="cell">{rnd.random():.6f}</span>'
+        f'<a href="/stocks/quotes/SPY/options?row={i}">SPY option row {i}</a></div>\n' for i in range(2500)]
+    block = ('<div class="bc-options-toolbar__second-row">'
+             '<div class="column"><span class="left">Implied Volatility:</span><span class="right"><strong>18.42%</strong></span></div>'
+             '<div class="column"><span class="left">Historic Volatility:</span><span class="right"><strong>14.97%</strong></span></div>'
+             '<div class="column"><span class="left">IV Percentile:</span><span class="right"><strong>41%</strong></span></div>'
+             '<div class="column"><span class="left">IV Rank:</span><span class="right"><strong>23.51%</strong></span></div>'
+             '</div>\n')
+    return ("<!doctype html><html><head><title>SPY Put/Call Ratios</title>"
+            + "".join(f'<script src="/assets/bundle-{i}.js"></script>' for i in range(40))
+            + "</head><body><header>" + "".join(rows[:1250]) + "</header><main>" + block
+            + "".join(rows[1250:]) + "</main></body></html>\n")
+
+
+with open(OUT + "options-expirations.json", "w") as f:
+    json.dump(expirations(), f, separators=(",", ":"))
+for name, strikes in (("small", 20), ("medium", 80), ("large", 200)):
+    with open(OUT + f"options-chain-{name}.json", "w") as f:
+        json.dump(chain(strikes), f, separators=(",", ":"))
+with open(OUT + "put-call-ratios.html", "w") as f:
+    f.write(html())
@@ -0,0 +1,336 @@
+package Tool;
+
+import Util.ConfigLoader;
+import Util.ConnectionPool;
+import Util.CycleHelper;
+import Util.LogUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Moves expired rows (expiration_date < today) into market_archive in small primary-key ordered chunks.
+// Work unit is (table, symbol, Cycle_Range): expiration_date follows them in the PK, so every chunk is an
+// index range. Each chunk is one short INSERT IGNORE ... SELECT + DELETE transaction, sized so it commits
+// within archive.maxLockMillis. Finished units are checkpointed; an interrupted unit simply restarts,
+// since the rows it already moved are gone from the live table.
+public class ArchiveMover {
+
+    // Key columns after (symbol, Cycle_Range), in primary key order
+    private record Table(String live, String archive, List<String> keyColumns) {
+    }
+
+    // Chains before their market_data parents, so the ON DELETE CASCADE never has anything to do
+    private static final List<Table> TABLES = List.of(
+            new Table("option_chain_data", "option_chain_data_archive",
+                    List.of("expiration_date", "expiration_type", "update_date", "strike", "contract_type")),
+            new Table("market_data", "market_data_archive",
+                    List.of("expiration_date", "expiration_type", "update_date")));
+
+    private static final String CHECKPOINT_DDL = "CREATE TABLE IF NOT EXISTS archive_checkpoint (" +
+            "cutoff_date DATE NOT NULL, table_name VARCHAR(64) NOT NULL, symbol VARCHAR(20) NOT NULL, " +
+            "Cycle_Range VARCHAR(50) NOT NULL, rows_moved BIGINT NOT NULL DEFAULT 0, done TINYINT(1) NOT NULL DEFAULT 0, " +
+            "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
+            "PRIMARY KEY (cutoff_date, table_name, symbol, Cycle_Range))";
+
+    private final String archiveSchema;
+    private final String cutoff;                 // yyyy-MM-dd, compared as-is: no function on expiration_date
+    private final int maxChunkRows;
+    private final long maxLockMillis;
+    private final long pauseMillis;
+
+    private final AtomicLong rowsMoved = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong longestChunkMillis = new AtomicLong();
+
+    ArchiveMover(String archiveSchema, LocalDate cutoff, int maxChunkRows, long maxLockMillis, long pauseMillis) {
+        this.archiveSchema = archiveSchema;
+        this.cutoff = cutoff.toString();
+        this.maxChunkRows = maxChunkRows;
+        this.maxLockMillis = maxLockMillis;
+        this.pauseMillis = pauseMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && (args[0].equalsIgnoreCase("-h") || args[0].equalsIgnoreCase("--help"))) {
+            System.out.println("Usage:");
+            System.out.println("  java -cp yourJar.jar Tool.ArchiveMover");
+            System.out.println("    -> Moves rows with expiration_date before today (New York) to the archive schema");
+            System.out.println("  java -cp yourJar.jar Tool.ArchiveMover <SYMBOL>");
+            System.out.println("    -> Only the specified symbol");
+            return;
+        }
+
+        ConfigLoader config = new ConfigLoader();
+        int threads = Integer.parseInt(config.getProperty("archive.threads", "4").trim());
+        ConnectionPool.init(config, threads);
+
+        ArchiveMover mover = new ArchiveMover(
+                config.getProperty("archive.schema", "market_archive").trim(),
+                LocalDate.now(CycleHelper.NEW_YORK),
+                Integer.parseInt(config.getProperty("archive.chunkRows", "2000").trim()),
+                Long.parseLong(config.getProperty("archive.maxLockMillis", "200").trim()),
+                Long.parseLong(config.getProperty("archive.pauseMillis", "50").trim()));
+
+        try (Connection conn = ConnectionPool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(CHECKPOINT_DDL);
+        }
+        List<String> symbols = args.length > 0 ? List.of(args[0].toUpperCase()) : mover.loadSymbols();
+        mover.run(symbols, threads);
+        ConnectionPool.close();
+    }
+
+    void run(List<String> symbols, int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        LogUtil.log("📦 Archiving rows with expiration_date < " + cutoff + " for " + symbols.size()
+                + " symbols on " + threads + " threads");
+
+        // Parallel across symbols, serial inside one: chains, then market_data
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            futures.add(executor.submit(() -> {
+                try {
+                    moveSymbol(symbol);
+                } catch (Exception e) {
+                    LogUtil.log("❌ Archive failed for " + symbol + ": " + e.getMessage());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception ignored) {
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        LogUtil.log("✅ Archived " + rowsMoved.get() + " rows in " + chunks.get() + " chunks, longest chunk "
+                + longestChunkMillis.get() + " ms, total " + (System.nanoTime() - start) / 1_000_000_000 + " s");
+    }
+
+    private List<String> loadSymbols() throws SQLException {
+        List<String> symbols = new ArrayList<>();
+        try (Connection conn = ConnectionPool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT symbol FROM market_data")) {
+            while (rs.next()) {
+                symbols.add(rs.getString(1));
+            }
+        }
+        return symbols;
+    }
+
+    private void moveSymbol(String symbol) throws Exception {
+        try (Connection conn = ConnectionPool.getConnection()) {
+            // Row locks only on the chunk itself: no gap locks, and give up quickly behind a writer
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET SESSION innodb_lock_wait_timeout = 2");
+            }
+            for (Table table : TABLES) {
+                String columns = columns(conn, table.live());
+                for (String cycle : cycleRanges(conn, table.live(), symbol)) {
+                    if (isDone(conn, table, symbol, cycle)) continue;
+                    long moved = moveUnit(conn, table, columns, symbol, cycle);
+                    markDone(conn, table, symbol, cycle);
+                    if (moved > 0) {
+                        LogUtil.log("📦 " + table.live() + " " + symbol + " [" + cycle + "]: " + moved + " rows");
+                    }
+                }
+            }
+        }
+    }
+
+    private long moveUnit(Connection conn, Table table, String columns, String symbol, String cycle) throws Exception {
+        String keys = String.join(", ", table.keyColumns());
+        String unit = "symbol = ? AND Cycle_Range = ? AND expiration_date < ?";
+        // MySQL does not turn a row comparison "(a, b) > (?, ?)" into an index range, so every chunk would
+        // rescan the rest of the unit. Spelled out as OR/AND, plus a plain bound on the leading column, the
+        // range starts at the previous chunk's last key and ends at this chunk's.
+        String afterClause = " AND " + table.keyColumns().get(0) + " >= ? AND " + keyBound(table.keyColumns(), ">", ">");
+        String uptoClause = " AND " + table.keyColumns().get(0) + " <= ? AND " + keyBound(table.keyColumns(), "<", "<=");
+
+        int chunkRows = Math.min(500, maxChunkRows);   // start small, grow while commits stay fast
+        Object[] after = null;
+        long moved = 0;
+        int rollbacks = 0;
+
+        while (true) {
+            // Plain consistent read, no locks: find where this chunk ends
+            Object[] last = null;
+            String seek = "SELECT " + keys + " FROM " + table.live() + " WHERE " + unit + (after != null ? afterClause : "")
+                    + " ORDER BY " + keys + " LIMIT " + chunkRows;
+            try (PreparedStatement stmt = conn.prepareStatement(seek)) {
+                int i = bindUnit(stmt, symbol, cycle);
+                if (after != null) bindKey(stmt, i, after);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (last == null) last = new Object[table.keyColumns().size()];
+                        for (int k = 0; k < last.length; k++) last[k] = rs.getObject(k + 1);
+                    }
+                }
+            }
+            if (last == null) return moved;
+
+            String range = unit + (after != null ? afterClause : "") + uptoClause;
+            long start = System.nanoTime();
+            int rows;
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement copy = conn.prepareStatement("INSERT IGNORE INTO " + archiveSchema + "." + table.archive()
+                        + " (" + columns + ") SELECT " + columns + " FROM " + table.live() + " WHERE " + range)) {
+                    bindRange(copy, symbol, cycle, after, last);
+                    copy.executeUpdate();
+                }
+                try (PreparedStatement delete = conn.prepareStatement("DELETE FROM " + table.live() + " WHERE " + range)) {
+                    bindRange(delete, symbol, cycle, after, last);
+                    rows = delete.executeUpdate();
+                }
+                recordProgress(conn, table, symbol, cycle, rows);
+                conn.commit();
+            } catch (SQLTransactionRollbackException e) {
+                // Lock wait timeout / deadlock with the collector: smaller chunk, try again
+                conn.rollback();
+                if (++rollbacks > 10) throw e;
+                chunkRows = Math.max(50, chunkRows / 2);
+                Thread.sleep(500L * rollbacks);
+                continue;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            longestChunkMillis.accumulateAndGet(millis, Math::max);
+            chunks.incrementAndGet();
+            rowsMoved.addAndGet(rows);
+            moved += rows;
+            after = last;
+
+            // Keep each transaction (and its row locks) under maxLockMillis
+            if (millis > maxLockMillis) {
+                chunkRows = Math.max(50, chunkRows / 2);
+            } else if (millis < maxLockMillis / 4) {
+                chunkRows = Math.min(maxChunkRows, chunkRows * 2);
+            }
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    private int bindUnit(PreparedStatement stmt, String symbol, String cycle) throws SQLException {
+        stmt.setString(1, symbol);
+        stmt.setString(2, cycle);
+        stmt.setString(3, cutoff);
+        return 4;
+    }
+
+    // (k1 op ?) OR (k1 = ? AND k2 op ?) OR ... with lastOp on the final column: a row comparison MySQL can range-scan
+    private static String keyBound(List<String> columns, String op, String lastOp) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int j = 0; j < columns.size(); j++) {
+            if (j > 0) sb.append(" OR ");
+            sb.append("(");
+            for (int k = 0; k < j; k++) {
+                sb.append(columns.get(k)).append(" = ? AND ");
+            }
+            sb.append(columns.get(j)).append(" ").append(j == columns.size() - 1 ? lastOp : op).append(" ?)");
+        }
+        return sb.append(")").toString();
+    }
+
+    // Parameters of "leading >= ? AND keyBound(...)" for one key
+    private int bindKey(PreparedStatement stmt, int index, Object[] key) throws SQLException {
+        stmt.setObject(index++, key[0]);
+        for (int j = 0; j < key.length; j++) {
+            for (int k = 0; k <= j; k++) {
+                stmt.setObject(index++, key[k]);
+            }
+        }
+        return index;
+    }
+
+    private void bindRange(PreparedStatement stmt, String symbol, String cycle, Object[] after, Object[] last) throws SQLException {
+        int i = bindUnit(stmt, symbol, cycle);
+        if (after != null) i = bindKey(stmt, i, after);
+        bindKey(stmt, i, last);
+    }
+
+    private List<String> cycleRanges(Connection conn, String table, String symbol) throws SQLException {
+        List<String> cycles = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT Cycle_Range FROM " + table + " WHERE symbol = ?")) {
+            stmt.setString(1, symbol);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    cycles.add(rs.getString(1));
+                }
+            }
+        }
+        return cycles;
+    }
+
+    private static String columns(Connection conn, String table) throws SQLException {
+        String sql = "SELECT GROUP_CONCAT(COLUMN_NAME ORDER BY ORDINAL_POSITION) FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    // ---- checkpoint ----
+
+    private boolean isDone(Connection conn, Table table, String symbol, String cycle) throws SQLException {
+        String sql = "SELECT done FROM archive_checkpoint WHERE cutoff_date = ? AND table_name = ? AND symbol = ? AND Cycle_Range = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindCheckpoint(stmt, table, symbol, cycle);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    // Same transaction as the chunk, so the count matches what was committed
+    private void recordProgress(Connection conn, Table table, String symbol, String cycle, int rows) throws SQLException {
+        String sql = "INSERT INTO archive_checkpoint (cutoff_date, table_name, symbol, Cycle_Range, rows_moved) " +
+                "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE rows_moved = rows_moved + VALUES(rows_moved)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindCheckpoint(stmt, table, symbol, cycle);
+            stmt.setInt(5, rows);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void markDone(Connection conn, Table table, String symbol, String cycle) throws SQLException {
+        String sql = "INSERT INTO archive_checkpoint (cutoff_date, table_name, symbol, Cycle_Range, done) " +
+                "VALUES (?, ?, ?, ?, 1) ON DUPLICATE KEY UPDATE done = 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindCheckpoint(stmt, table, symbol, cycle);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void bindCheckpoint(PreparedStatement stmt, Table table, String symbol, String cycle) throws SQLException {
+        stmt.setString(1, cutoff);
+        stmt.setString(2, table.live());
+        stmt.setString(3, symbol);
+        stmt.setString(4, cycle);
+    }
+}
@@ -0,0 +1,477 @@
+package Tool;
+
+import Util.ConfigLoader;
+import Util.ConnectionPool;
+import Util.CycleHelper;
+import Util.LogUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// RANGE COLUMNS partitions on a DATE expiration_date for market_data and option_chain_data: one per weekday
+// through the month partition.dailyDays reaches, one per month beyond that up to partition.horizonDays, so
+// queries that cannot prune (by symbol only) probe a few dozen partitions, not one per listed expiration.
+// Expired days leave the live tables by EXCHANGE PARTITION into market_archive and DROP PARTITION,
+// metadata operations that replace the STR_TO_DATE scan + DELETE events in Note/.
+public class PartitionManager {
+
+    // Live table, its archive twin, and an archive index that has to carry the live index name for EXCHANGE
+    private record Managed(String live, String archive, String archiveIndex, String liveIndex) {
+    }
+
+    private record Partition(String name, LocalDate bound, long rows) {   // bound == null for pmax
+    }
+
+    // Children first: option chains of a day go before their market_data parents
+    private static final List<Managed> TABLES = List.of(
+            new Managed("option_chain_data", "option_chain_data_archive",
+                    "idx_option_chain_archive_symbol_exp_contract", "idx_option_chain_symbol_exp_contract"),
+            new Managed("market_data", "market_data_archive", null, null));
+
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+    private static final DateTimeFormatter MONTH_NAME = DateTimeFormatter.ofPattern("'m'yyyyMMdd");  // last day covered
+
+    private final Connection conn;
+    private final String archiveSchema;
+    private final int dailyDays;
+    private final int horizonDays;
+    private final boolean dryRun;
+    private final LocalDate today;
+
+    PartitionManager(Connection conn, String archiveSchema, int dailyDays, int horizonDays, boolean dryRun, LocalDate today) {
+        this.conn = conn;
+        this.archiveSchema = archiveSchema;
+        this.dailyDays = dailyDays;
+        this.horizonDays = horizonDays;
+        this.dryRun = dryRun;
+        this.today = today;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0].toLowerCase() : "run";
+        boolean dryRun = List.of(args).contains("--dry-run");
+        if (!List.of("init", "run", "status").contains(command)) {
+            System.out.println("Usage:");
+            System.out.println("  java -cp yourJar.jar Tool.PartitionManager init [--dry-run]");
+            System.out.println("    -> one-time: DATE expiration_date, drop the FK and events, partition live + archive tables");
+            System.out.println("  java -cp yourJar.jar Tool.PartitionManager [run] [--dry-run]");
+            System.out.println("    -> nightly: archive expired partitions by exchange, split the next month into days, add months up to the horizon");
+            System.out.println("  java -cp yourJar.jar Tool.PartitionManager status");
+            return;
+        }
+
+        ConfigLoader config = new ConfigLoader();
+        String archiveSchema = config.getProperty("archive.schema", "market_archive").trim();
+        int dailyDays = Integer.parseInt(config.getProperty("partition.dailyDays", "35").trim());
+        int horizonDays = Integer.parseInt(config.getProperty("partition.horizonDays", "1100").trim());
+        LocalDate today = LocalDate.now(CycleHelper.NEW_YORK);
+
+        ConnectionPool.init(config, 1);
+        try (Connection conn = ConnectionPool.getConnection()) {
+            PartitionManager manager = new PartitionManager(conn, archiveSchema, dailyDays, horizonDays, dryRun, today);
+            switch (command) {
+                case "init" -> manager.init();
+                case "run" -> {
+                    manager.archiveExpired();
+                    manager.ensureAhead();
+                }
+                default -> manager.status();
+            }
+        } finally {
+            ConnectionPool.close();
+        }
+    }
+
+    // ---- one-time conversion ----
+
+    void init() throws SQLException {
+        exec("DROP EVENT IF EXISTS move_expired_market_data");
+        exec("DROP EVENT IF EXISTS move_expired_option_chain_data");
+        // Partitioned InnoDB tables cannot have foreign keys; both tables now rotate on the same day boundaries
+        if (foreignKeyExists("option_chain_data", "fk_option_chain_market")) {
+            exec("ALTER TABLE option_chain_data DROP FOREIGN KEY fk_option_chain_market");
+        }
+
+        for (Managed m : TABLES) {
+            if (!partitions(null, m.live()).isEmpty()) {
+                LogUtil.log("🗂️ " + m.live() + " is already partitioned");
+            } else {
+                exec("ALTER TABLE " + m.live() + " MODIFY expiration_date DATE NOT NULL");
+                List<String> defs = new ArrayList<>();
+                defs.add(definition("p_history", today));
+                defs.addAll(dailyDefinitions(today, dailyUntil()));
+                defs.addAll(monthlyDefinitions(dailyUntil(), horizonUntil()));
+                defs.add("PARTITION pmax VALUES LESS THAN (MAXVALUE)");
+                exec("ALTER TABLE " + m.live() + " PARTITION BY RANGE COLUMNS (expiration_date) ("
+                        + String.join(", ", defs) + ")");
+            }
+
+            String archive = archiveSchema + "." + m.archive();
+            if (!partitions(archiveSchema, m.archive()).isEmpty()) {
+                LogUtil.log("🗂️ " + archive + " is already partitioned");
+                continue;
+            }
+            // EXCHANGE PARTITION needs identical definitions, index names included
+            if (m.archiveIndex() != null && indexExists(archiveSchema, m.archive(), m.archiveIndex())) {
+                exec("ALTER TABLE " + archive + " RENAME INDEX " + m.archiveIndex() + " TO " + m.liveIndex());
+            }
+            exec("ALTER TABLE " + archive + " MODIFY expiration_date DATE NOT NULL");
+            exec("ALTER TABLE " + archive + " PARTITION BY RANGE COLUMNS (expiration_date) ("
+                    + definition("p_history", today) + ", PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        }
+    }
+
+    // ---- nightly rotation ----
+
+    // Every partition whose upper bound is today or earlier only holds expiration_date < today
+    void archiveExpired() throws SQLException {
+        for (Managed m : TABLES) {
+            resumeStaging(m);
+            for (Partition p : partitions(null, m.live())) {
+                if (p.bound() == null || p.bound().isAfter(today)) continue;
+                long start = System.nanoTime();
+                movePartition(m, p);
+                LogUtil.log("📦 " + m.live() + "." + p.name() + " (~" + p.rows() + " rows) archived in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+    }
+
+    // live partition -> empty staging table -> archive partition, then drop the emptied live partition.
+    // Every step is checked against information_schema first, so a rerun after a crash picks up where it stopped.
+    private void movePartition(Managed m, Partition p) throws SQLException {
+        String staging = archiveSchema + "." + staging(m);
+
+        if (tableExists(archiveSchema, staging(m))) {
+            // resumeStaging emptied it at the start of the run; rows here mean a step of this run failed
+            if (!isEmpty(staging, null)) {
+                throw new SQLException(staging + " still holds rows, not dropping it");
+            }
+            exec("DROP TABLE " + staging);
+        }
+        exec("CREATE TABLE " + staging + " LIKE " + m.live());
+        exec("ALTER TABLE " + staging + " REMOVE PARTITIONING");
+        exec("ALTER TABLE " + m.live() + " EXCHANGE PARTITION " + p.name() + " WITH TABLE " + staging + " WITHOUT VALIDATION");
+
+        archiveStaged(m, p);
+        dropLivePartition(m, p);
+        exec("DROP TABLE " + staging);
+    }
+
+    // Staged rows of live partition p into the archive: by exchange into an empty partition of the same
+    // range, otherwise (first p_history, reruns, resumed rows) by copy, still off the live table
+    private void archiveStaged(Managed m, Partition p) throws SQLException {
+        String archive = archiveSchema + "." + m.archive();
+        String staging = archiveSchema + "." + staging(m);
+
+        List<Partition> archiveParts = partitions(archiveSchema, m.archive());
+        Partition same = archiveParts.stream().filter(a -> a.name().equals(p.name())).findFirst().orElse(null);
+        LocalDate highest = archiveParts.stream().map(Partition::bound)
+                .filter(b -> b != null).max(LocalDate::compareTo).orElse(null);
+
+        if (same == null && (highest == null || highest.isBefore(p.bound()))) {
+            // Carving the new day out of the archive's pmax; it is empty unless a resumed copy landed there
+            exec("ALTER TABLE " + archive + " REORGANIZE PARTITION pmax INTO ("
+                    + definition(p.name(), p.bound()) + ", PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            same = new Partition(p.name(), p.bound(), 0);
+        }
+        // An exchange swaps whatever the archive partition holds into staging, so only ever into an empty one
+        if (same != null && same.bound().equals(p.bound()) && (dryRun || isEmpty(archive, p.name()))) {
+            exec("ALTER TABLE " + archive + " EXCHANGE PARTITION " + p.name() + " WITH TABLE " + staging + " WITHOUT VALIDATION");
+        } else {
+            String columns = columns(m.live());
+            exec("INSERT IGNORE INTO " + archive + " (" + columns + ") SELECT " + columns + " FROM " + staging);
+        }
+    }
+
+    private void dropLivePartition(Managed m, Partition p) throws SQLException {
+        if (partitions(null, m.live()).stream().noneMatch(l -> l.name().equals(p.name()))) return;
+        if (!dryRun && !isEmpty(m.live(), p.name())) {
+            // Rows written for an expired day after the exchange; the next run moves them
+            LogUtil.log("⚠️ " + m.live() + "." + p.name() + " is not empty, keeping it until the next run");
+            return;
+        }
+        exec("ALTER TABLE " + m.live() + " DROP PARTITION " + p.name());
+    }
+
+    // A run that died between the exchanges leaves the only copy of a day in the staging table.
+    // Move it into the archive before anything drops the staging table.
+    private void resumeStaging(Managed m) throws SQLException {
+        String staging = archiveSchema + "." + staging(m);
+        if (!tableExists(archiveSchema, staging(m))) return;
+        if (!isEmpty(staging, null)) {
+            LocalDate[] range = expirationRange(staging);
+            LogUtil.log("♻️ " + staging + " holds expirations " + range[0] + ".." + range[1]
+                    + " from an interrupted run, archiving them first");
+            // The expired live partition they came from, if it is still there and its range holds them all
+            Partition home = null;
+            LocalDate lower = null;
+            for (Partition p : partitions(null, m.live())) {
+                if (p.bound() == null || p.bound().isAfter(today)) break;
+                if ((lower == null || !range[0].isBefore(lower)) && range[1].isBefore(p.bound())) {
+                    home = p;
+                    break;
+                }
+                lower = p.bound();
+            }
+            if (home != null) {
+                archiveStaged(m, home);
+                dropLivePartition(m, home);
+            } else {
+                String columns = columns(m.live());
+                exec("INSERT IGNORE INTO " + archiveSchema + "." + m.archive()
+                        + " (" + columns + ") SELECT " + columns + " FROM " + staging);
+            }
+        }
+        exec("DROP TABLE " + staging);
+    }
+
+    private static String staging(Managed m) {
+        return m.live() + "_xchg";
+    }
+
+    // Months the daily window reaches are split into days, legacy days beyond it merged into months,
+    // then months are added up to the horizon
+    void ensureAhead() throws SQLException {
+        for (Managed m : TABLES) {
+            if (partitions(null, m.live()).isEmpty()) {
+                LogUtil.log("⚠️ " + m.live() + " is not partitioned, run init first");
+                continue;
+            }
+            splitEnteringWindow(m);
+            mergeBeyondWindow(m);
+            extend(m);
+        }
+    }
+
+    private void splitEnteringWindow(Managed m) throws SQLException {
+        LocalDate window = today.plusDays(dailyDays);
+        LocalDate lower = null;
+        for (Partition p : partitions(null, m.live())) {
+            if (p.bound() != null && p.name().startsWith("m") && lower != null && lower.isBefore(window)) {
+                exec("ALTER TABLE " + m.live() + " REORGANIZE PARTITION " + p.name() + " INTO ("
+                        + String.join(", ", dailyDefinitions(lower, p.bound())) + ")");
+                LogUtil.log("🗂️ " + m.live() + ": split " + p.name() + " (~" + p.rows() + " rows) into days");
+            }
+            lower = p.bound();
+        }
+    }
+
+    // One-time for tables partitioned daily up to the horizon: REORGANIZE copies the rows of the merged days
+    private void mergeBeyondWindow(Managed m) throws SQLException {
+        List<Partition> run = new ArrayList<>();
+        LocalDate runLower = null;
+        LocalDate lower = null;
+        for (Partition p : partitions(null, m.live())) {
+            boolean beyond = lower != null && !lower.isBefore(dailyUntil());
+            if (beyond && p.bound() != null && p.name().matches("p\\d{8}")) {
+                if (run.isEmpty()) runLower = lower;
+                run.add(p);
+            } else if (!run.isEmpty()) {
+                break;
+            }
+            lower = p.bound();
+        }
+        if (run.isEmpty()) return;
+        LocalDate runBound = run.get(run.size() - 1).bound();
+        long rows = run.stream().mapToLong(Partition::rows).sum();
+        exec("ALTER TABLE " + m.live() + " REORGANIZE PARTITION "
+                + String.join(",", run.stream().map(Partition::name).toList()) + " INTO ("
+                + String.join(", ", monthlyDefinitions(runLower, runBound)) + ")");
+        LogUtil.log("🗂️ " + m.live() + ": merged " + run.size() + " daily partitions (~" + rows + " rows) into months");
+    }
+
+    private void extend(Managed m) throws SQLException {
+        List<Partition> parts = partitions(null, m.live());
+        LocalDate covered = parts.stream().map(Partition::bound).filter(b -> b != null)
+                .max(LocalDate::compareTo).orElse(today);
+        List<String> defs = new ArrayList<>();
+        if (covered.isBefore(dailyUntil())) {
+            defs.addAll(dailyDefinitions(covered.isBefore(today) ? today : covered, dailyUntil()));
+        }
+        LocalDate monthsFrom = covered.isBefore(dailyUntil()) ? dailyUntil() : covered;
+        defs.addAll(monthlyDefinitions(monthsFrom, horizonUntil()));
+        if (defs.isEmpty()) return;
+
+        long pmaxRows = parts.get(parts.size() - 1).rows();
+        if (pmaxRows > 0) {
+            LogUtil.log("⚠️ " + m.live() + ".pmax holds ~" + pmaxRows + " rows beyond the horizon, reorganizing copies them");
+        }
+        defs.add("PARTITION pmax VALUES LESS THAN (MAXVALUE)");
+        exec("ALTER TABLE " + m.live() + " REORGANIZE PARTITION pmax INTO (" + String.join(", ", defs) + ")");
+        LogUtil.log("🗂️ " + m.live() + ": added " + (defs.size() - 1) + " partitions through " + horizonUntil().minusDays(1));
+    }
+
+    void status() throws SQLException {
+        for (Managed m : TABLES) {
+            describe(m.live(), partitions(null, m.live()));
+            describe(archiveSchema + "." + m.archive(), partitions(archiveSchema, m.archive()));
+        }
+    }
+
+    private static void describe(String table, List<Partition> parts) {
+        if (parts.isEmpty()) {
+            LogUtil.log("🗂️ " + table + ": not partitioned");
+            return;
+        }
+        long rows = parts.stream().mapToLong(Partition::rows).sum();
+        LocalDate last = parts.stream().map(Partition::bound).filter(b -> b != null).max(LocalDate::compareTo).orElse(null);
+        LogUtil.log("🗂️ " + table + ": " + parts.size() + " partitions, first " + parts.get(0).name()
+                + ", covered until " + last + ", ~" + rows + " rows");
+    }
+
+    // ---- helpers ----
+
+    private static List<LocalDate> tradingDays(LocalDate from, LocalDate until) {
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(until); day = day.plusDays(1)) {
+            if (day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    // Days are partitioned through the end of the month the daily window reaches
+    private LocalDate dailyUntil() {
+        return today.plusDays(dailyDays).withDayOfMonth(1).plusMonths(1);
+    }
+
+    private LocalDate horizonUntil() {
+        return today.plusDays(horizonDays).withDayOfMonth(1).plusMonths(1);
+    }
+
+    // One partition per weekday of [from, bound): weekend dates fall into the following weekday, the tail
+    // after the last weekday into that last one, so the set covers exactly up to bound
+    private static List<String> dailyDefinitions(LocalDate from, LocalDate bound) {
+        List<LocalDate> days = tradingDays(from, bound.minusDays(1));
+        if (days.isEmpty()) return List.of(definition(bound.minusDays(1).format(NAME), bound));
+        List<String> defs = new ArrayList<>();
+        for (int i = 0; i < days.size(); i++) {
+            LocalDate day = days.get(i);
+            defs.add(definition(day.format(NAME), i == days.size() - 1 ? bound : day.plusDays(1)));
+        }
+        return defs;
+    }
+
+    // Calendar-month partitions over [from, bound), the first and last one clipped to those
+    private static List<String> monthlyDefinitions(LocalDate from, LocalDate bound) {
+        List<String> defs = new ArrayList<>();
+        for (LocalDate lower = from; lower.isBefore(bound); ) {
+            LocalDate next = lower.withDayOfMonth(1).plusMonths(1);
+            if (next.isAfter(bound)) next = bound;
+            defs.add(definition(next.minusDays(1).format(MONTH_NAME), next));
+            lower = next;
+        }
+        return defs;
+    }
+
+    private static String definition(String name, LocalDate exclusiveBound) {
+        return "PARTITION " + name + " VALUES LESS THAN ('" + exclusiveBound + "')";
+    }
+
+    // Partitions in ordinal order; schema null means the connection's database
+    private List<Partition> partitions(String schema, String table) throws SQLException {
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = " + (schema == null ? "DATABASE()" : "?") + " AND TABLE_NAME = ? " +
+                "AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+        List<Partition> parts = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (schema != null) stmt.setString(i++, schema);
+            stmt.setString(i, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String description = rs.getString(2).replace("'", "").trim();
+                    LocalDate bound = "MAXVALUE".equalsIgnoreCase(description) ? null : LocalDate.parse(description);
+                    parts.add(new Partition(rs.getString(1), bound, rs.getLong(3)));
+                }
+            }
+        }
+        return parts;
+    }
+
+    // partition null: the whole table
+    private boolean isEmpty(String table, String partition) throws SQLException {
+        String from = partition == null ? table : table + " PARTITION (" + partition + ")";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + from + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    private LocalDate[] expirationRange(String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(expiration_date), MAX(expiration_date) FROM " + table)) {
+            rs.next();
+            return new LocalDate[]{rs.getDate(1).toLocalDate(), rs.getDate(2).toLocalDate()};
+        }
+    }
+
+    private boolean tableExists(String schema, String table) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, schema);
+            stmt.setString(2, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private String columns(String table) throws SQLException {
+        String sql = "SELECT GROUP_CONCAT(COLUMN_NAME ORDER BY ORDINAL_POSITION) FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private boolean foreignKeyExists(String table, String constraint) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.TABLE_CONSTRAINTS WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND TABLE_NAME = ? AND CONSTRAINT_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            stmt.setString(2, constraint);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private boolean indexExists(String schema, String table, String index) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, schema);
+            stmt.setString(2, table);
+            stmt.setString(3, index);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void exec(String sql) throws SQLException {
+        String shown = sql.length() > 300 ? sql.substring(0, 300) + " ..." : sql;
+        if (dryRun) {
+            LogUtil.log("[dry-run] " + shown);
+            return;
+        }
+        LogUtil.log("▶ " + shown);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
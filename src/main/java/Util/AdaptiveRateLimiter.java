@@ -0,0 +1,115 @@
+package Util;
+
+import java.net.http.HttpHeaders;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// AIMD request pacing for one proxy: creep up on success, halve once per burst of 429/403, honour Retry-After
+class AdaptiveRateLimiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final double step;
+
+    private double rate;                      // requests per second
+    private long nextSlotNanos = System.nanoTime();
+    private long blockedUntilNanos = 0;
+    private double baselineLatencyMs = -1;    // slow-moving floor of observed latency
+    private long holdDecreasesUntilNanos = 0; // responses to requests sent before the last cut don't cut again
+
+    AdaptiveRateLimiter(double initialRate, double minRate, double maxRate, double step) {
+        this.rate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.step = step;
+    }
+
+    static AdaptiveRateLimiter fromConfig(ConfigLoader config) {
+        return new AdaptiveRateLimiter(
+                Double.parseDouble(config.getProperty("ratelimit.initial", "2").trim()),
+                Double.parseDouble(config.getProperty("ratelimit.min", "0.2").trim()),
+                Double.parseDouble(config.getProperty("ratelimit.max", "10").trim()),
+                Double.parseDouble(config.getProperty("ratelimit.step", "1").trim()));
+    }
+
+    // Wait for this proxy's next send slot
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(Math.max(now, nextSlotNanos), blockedUntilNanos);
+            nextSlotNanos = slot + (long) (1_000_000_000L / rate);
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    synchronized void onResponse(int statusCode, HttpHeaders headers, long latencyMillis) {
+        if (statusCode == 429 || statusCode == 403 || statusCode == 503) {
+            decrease(0.5, latencyMillis);
+            long retryAfterMillis = parseRetryAfterMillis(headers.firstValue("retry-after"));
+            if (retryAfterMillis > 0) {
+                blockedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            }
+            return;
+        }
+
+        if (baselineLatencyMs < 0) {
+            baselineLatencyMs = latencyMillis;
+        } else {
+            // Floor follows drops immediately and rises slowly, so it tracks the uncongested latency
+            baselineLatencyMs = latencyMillis < baselineLatencyMs
+                    ? latencyMillis
+                    : baselineLatencyMs + 0.01 * (latencyMillis - baselineLatencyMs);
+        }
+
+        if (latencyMillis > 2 * baselineLatencyMs + 250) {
+            decrease(0.9, latencyMillis);     // latency inflation: back off gently before the 429s start
+        } else {
+            rate = Math.min(maxRate, rate + step / rate);   // ~ +step req/s per second of clean traffic
+        }
+    }
+
+    synchronized void onTimeout() {
+        decrease(0.7, 0);
+    }
+
+    // One multiplicative cut per congestion event: the maxConcurrent responses already in flight when the
+    // proxy started throttling all come back within about one RTT / slot, and only the first of them counts
+    private void decrease(double factor, long latencyMillis) {
+        long now = System.nanoTime();
+        if (now - holdDecreasesUntilNanos < 0) return;
+        rate = Math.max(minRate, rate * factor);
+        long slotNanos = (long) (1_000_000_000L / rate);
+        holdDecreasesUntilNanos = now + Math.max(slotNanos, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+
+    // How long a request would wait right now, used to steer proxy selection away from throttled proxies
+    synchronized long waitMillis() {
+        long now = System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, Math.max(nextSlotNanos, blockedUntilNanos) - now));
+    }
+
+    synchronized String describe() {
+        return String.format("rate=%.2f/s", rate) + (waitMillis() > 1_000 ? ", blocked " + waitMillis() / 1000 + "s" : "");
+    }
+
+    private static long parseRetryAfterMillis(Optional<String> header) {
+        if (header.isEmpty()) return 0;
+        String value = header.get().trim();
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, until.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (Exception ignored) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package Util;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Barchart cookies + XSRF token per proxy, so API calls skip the bootstrap page fetch
+public class BarchartSessionCache {
+
+    public record Session(String cookieHeader, String xsrfToken, String userAgent, long expiresAtMillis) {
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private static final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong bootstraps = new AtomicLong();
+    private static final Metrics.Histogram BOOTSTRAP = Metrics.histogram("stage_seconds", "stage", "bootstrap");
+
+    private static String bootstrapUrl = "https://www.barchart.com/stocks/quotes/SPY/options";
+    private static long ttlMillis = Duration.ofMinutes(20).toMillis();
+
+    public static void init(ConfigLoader config) {
+        bootstrapUrl = config.getProperty("session.bootstrap.url", bootstrapUrl).trim();
+        ttlMillis = Duration.ofMinutes(Long.parseLong(config.getProperty("session.ttl.minutes", "20").trim())).toMillis();
+    }
+
+    // Cached session for this proxy, bootstrapping one if missing or expired
+    public static Session get(InetSocketAddress proxy, ProxyManager proxyManager) throws Exception {
+        String key = keyOf(proxy);
+        Session session = sessions.get(key);
+        if (session != null && !session.isExpired()) {
+            hits.incrementAndGet();
+            return session;
+        }
+
+        // One bootstrap per proxy at a time, the other callers reuse its result
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            session = sessions.get(key);
+            if (session != null && !session.isExpired()) {
+                hits.incrementAndGet();
+                return session;
+            }
+            session = bootstrap(proxy, proxyManager);
+            sessions.put(key, session);
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drop the session after Barchart rejected it (401/403/419)
+    public static void invalidate(InetSocketAddress proxy) {
+        sessions.remove(keyOf(proxy));
+    }
+
+    public static boolean isRejected(int statusCode) {
+        return statusCode == 401 || statusCode == 403 || statusCode == 419;
+    }
+
+    // Bootstrap every proxy in parallel before a cycle starts
+    public static void prewarm(ProxyManager proxyManager) {
+        List<InetSocketAddress> proxies = proxyManager.getProxies();
+        if (proxies.isEmpty()) return;
+
+        long start = System.nanoTime();
+        int ready = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Session>> futures = new ArrayList<>();
+            for (InetSocketAddress proxy : proxies) {
+                futures.add(executor.submit(() -> get(proxy, proxyManager)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    ready++;
+                } catch (Exception e) {
+                    LogUtil.log("Session prewarm failed for " + proxies.get(i) + ": " + e.getMessage());
+                }
+            }
+        }
+        LogUtil.log("🍪 Sessions ready for " + ready + "/" + proxies.size() + " proxies in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public static String stats() {
+        return "session hits=" + hits.get() + ", bootstraps=" + bootstraps.get();
+    }
+
+    private static Session bootstrap(InetSocketAddress proxy, ProxyManager proxyManager) throws Exception {
+        String userAgent = UserAgentProvider.getRandomUserAgent();
+        HttpRequest pageRequest = HttpRequest.newBuilder()
+                .uri(URI.create(bootstrapUrl))
+                .GET()
+                .timeout(Duration.ofSeconds(30))
+                .header("user-agent", userAgent)
+                .header("accept-language", "en-US,en;q=0.9")
+                .header("cache-control", "no-cache")
+                .header("accept", "text/html")
+                .build();
+
+        long start = System.nanoTime();
+        HttpResponse<Void> pageResponse = proxyManager.send(proxy, pageRequest, HttpResponse.BodyHandlers.discarding());
+        BOOTSTRAP.since(start);
+        bootstraps.incrementAndGet();
+
+        List<String> setCookies = pageResponse.headers().allValues("set-cookie");
+        String xsrfToken = HttpHelper.extractXsrfFromCookies(setCookies);
+        if (xsrfToken.isEmpty()) {
+            throw new IllegalStateException("No XSRF token from bootstrap page, status=" + pageResponse.statusCode());
+        }
+        String cookieHeader = setCookies.stream()
+                .map(c -> c.split(";", 2)[0])
+                .collect(Collectors.joining("; ")) + "; bcFreeUserPageView=0";
+
+        return new Session(cookieHeader, xsrfToken, userAgent, System.currentTimeMillis() + ttlMillis);
+    }
+
+    private static String keyOf(InetSocketAddress proxy) {
+        return proxy == null ? "direct" : proxy.getHostString() + ":" + proxy.getPort();
+    }
+}
@@ -3,12 +3,21 @@ package Util;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ConnectionPool {
     private static HikariDataSource dataSource;
 
+    // Callers wait here instead of hitting Hikari's 5s connectionTimeout when many virtual threads want the DB
+    private static Semaphore dbPermits;
+
+    private static final Metrics.Histogram ACQUIRE = Metrics.histogram("stage_seconds", "stage", "db_acquire");
+
     public static void init(ConfigLoader config, int threadCount) {
         HikariConfig hikariConfig = new HikariConfig();
 
@@ -17,7 +26,8 @@ public class ConnectionPool {
         hikariConfig.setPassword(config.getDbPassword());
 
         // ---- Dynamically determine pool size ----
-        int maxPool = Math.max(threadCount, Runtime.getRuntime().availableProcessors() * 2);
+        int defaultPool = Math.max(threadCount, Runtime.getRuntime().availableProcessors() * 2);
+        int maxPool = Integer.parseInt(config.getProperty("db.pool.size", String.valueOf(defaultPool)).trim());
         int minIdle = Math.max(5, maxPool / 4);
 
         hikariConfig.setMaximumPoolSize(maxPool);
@@ -27,14 +37,66 @@ public class ConnectionPool {
         hikariConfig.setConnectionTimeout(5_000);   // 5 seconds
         hikariConfig.setMaxLifetime(1_800_000);     // 30 minutes
 
-        LogUtil.log("🔌 HikariCP pool: maxPoolSize=" + maxPool + ", minIdle=" + minIdle);
+        // Bulk ingest streams rows with LOAD DATA LOCAL INFILE (server needs local_infile=ON too)
+        if ("loaddata".equalsIgnoreCase(config.getProperty("ingest.mode", "multirow").trim())) {
+            hikariConfig.addDataSourceProperty("allowLoadLocalInfile", "true");
+        }
+
+        int maxConcurrent = Integer.parseInt(config.getProperty("db.maxConcurrent", String.valueOf(maxPool)).trim());
+        dbPermits = new Semaphore(Math.max(1, Math.min(maxConcurrent, maxPool)), true);
+
+        LogUtil.log("🔌 HikariCP pool: maxPoolSize=" + maxPool + ", minIdle=" + minIdle
+                + ", maxConcurrent=" + dbPermits.availablePermits());
 
         dataSource = new HikariDataSource(hikariConfig);
+
+        Metrics.gauge("hikari_connections_active", () -> dataSource.getHikariPoolMXBean().getActiveConnections());
+        Metrics.gauge("hikari_connections_idle", () -> dataSource.getHikariPoolMXBean().getIdleConnections());
+        Metrics.gauge("hikari_connections_total", () -> dataSource.getHikariPoolMXBean().getTotalConnections());
+        Metrics.gauge("hikari_threads_awaiting", () -> dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection());
+        Metrics.gauge("db_permit_waiters", () -> dbPermits.getQueueLength());
     }
 
 
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        long start = System.nanoTime();
+        try {
+            dbPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB permit", e);
+        }
+        try {
+            Connection connection = withPermit(dataSource.getConnection());
+            ACQUIRE.since(start);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            dbPermits.release();
+            throw e;
+        }
+    }
+
+    // Wrap the pooled connection so close() also hands the permit back (exactly once)
+    private static Connection withPermit(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, methodArgs) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) dbPermits.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, methodArgs);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
     }
 
     public static void close() {
@@ -1,12 +1,64 @@
 package Util;
 
+import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
 
 public class CycleHelper {
 
+    public static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    // Run start times (New York), same slots as Deploy/crontab-all.txt
+    private static final List<LocalTime> RUN_TIMES = List.of(
+            LocalTime.of(8, 0), LocalTime.of(8, 30), LocalTime.of(9, 36),
+            LocalTime.of(10, 6), LocalTime.of(10, 36), LocalTime.of(11, 6), LocalTime.of(11, 36),
+            LocalTime.of(12, 6), LocalTime.of(12, 36), LocalTime.of(13, 6), LocalTime.of(13, 36),
+            LocalTime.of(14, 6), LocalTime.of(14, 36), LocalTime.of(15, 6), LocalTime.of(15, 36),
+            LocalTime.of(16, 6), LocalTime.of(21, 0)
+    );
+
+    // Window boundaries behind getCycleRange: Khung 0 starts at 8:30, Khung 14 ends before 16:36
+    private static final List<LocalTime> WINDOW_BOUNDARIES = List.of(
+            LocalTime.of(8, 30), LocalTime.of(9, 36), LocalTime.of(10, 6), LocalTime.of(10, 36),
+            LocalTime.of(11, 6), LocalTime.of(11, 36), LocalTime.of(12, 6), LocalTime.of(12, 36),
+            LocalTime.of(13, 6), LocalTime.of(13, 36), LocalTime.of(14, 6), LocalTime.of(14, 36),
+            LocalTime.of(15, 6), LocalTime.of(15, 36), LocalTime.of(16, 6), LocalTime.of(16, 36)
+    );
+
+    // When the Cycle_Range label of the given time changes: 8:30 for "Pre cycle", null only after 16:36
+    public static ZonedDateTime getCycleEnd(ZonedDateTime from) {
+        ZonedDateTime now = from.withZoneSameInstant(NEW_YORK);
+        LocalTime time = now.toLocalTime();
+        for (LocalTime boundary : WINDOW_BOUNDARIES) {
+            if (boundary.isAfter(time)) {
+                return now.with(boundary).withSecond(0).withNano(0);
+            }
+        }
+        return null;
+    }
+
+    // Next weekday run slot strictly after the given time
+    public static ZonedDateTime getNextRunTime(ZonedDateTime from) {
+        ZonedDateTime now = from.withZoneSameInstant(NEW_YORK);
+        for (int day = 0; day <= 7; day++) {
+            ZonedDateTime date = now.plusDays(day);
+            DayOfWeek dow = date.getDayOfWeek();
+            if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) continue;
+
+            for (LocalTime time : RUN_TIMES) {
+                ZonedDateTime candidate = date.with(time).withSecond(0).withNano(0);
+                if (candidate.isAfter(now)) {
+                    return candidate;
+                }
+            }
+        }
+        throw new IllegalStateException("No run time found after " + from);
+    }
+
     public static String getCycleRange() {
-        LocalTime now = LocalTime.now(ZoneId.of("America/New_York"));
+        LocalTime now = LocalTime.now(NEW_YORK);
 
         // Before Khung 0 (before 8:30)
         if (now.isBefore(LocalTime.of(8, 30))) {
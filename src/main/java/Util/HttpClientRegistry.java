@@ -0,0 +1,145 @@
+package Util;
+
+import javax.net.ssl.*;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// One long-lived HttpClient per proxy: keep-alive connections and HTTP/2 are reused across symbols
+public class HttpClientRegistry {
+
+    private record Entry(HttpClient client, LongAdder handshakes, LongAdder requests) {
+    }
+
+    private static final Map<String, Entry> clients = new ConcurrentHashMap<>();
+
+    public static void init(ConfigLoader config) {
+        // Must be set before the first HttpClient is built, the JDK reads it once
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout",
+                    config.getProperty("http.keepalive.seconds", "120").trim());
+        }
+    }
+
+    public static HttpClient get(InetSocketAddress proxy) {
+        return entryFor(proxy).client();
+    }
+
+    static void recordRequest(InetSocketAddress proxy) {
+        entryFor(proxy).requests().increment();
+    }
+
+    // Every TLS handshake creates an SSLEngine, so engines created == new connections opened
+    public static String stats() {
+        long handshakes = 0;
+        long requests = 0;
+        for (Entry entry : clients.values()) {
+            handshakes += entry.handshakes().sum();
+            requests += entry.requests().sum();
+        }
+        long reused = Math.max(0, requests - handshakes);
+        double reuseRate = requests > 0 ? reused * 100.0 / requests : 0.0;
+        return "http clients=" + clients.size() + ", requests=" + requests + ", tls handshakes=" + handshakes
+                + ", reused=" + reused + " (" + String.format("%.1f", reuseRate) + "%)";
+    }
+
+    private static Entry entryFor(InetSocketAddress proxy) {
+        return clients.computeIfAbsent(keyOf(proxy), k -> build(proxy));
+    }
+
+    private static Entry build(InetSocketAddress proxy) {
+        LongAdder handshakes = new LongAdder();
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)   // falls back to HTTP/1.1 keep-alive when ALPN says no
+                .sslContext(countingContext(handshakes))
+                .connectTimeout(Duration.ofSeconds(30));
+        if (proxy != null) {
+            builder.proxy(ProxySelector.of(proxy));
+        }
+        return new Entry(builder.build(), handshakes, new LongAdder());
+    }
+
+    private static String keyOf(InetSocketAddress proxy) {
+        return proxy == null ? "direct" : proxy.getHostString() + ":" + proxy.getPort();
+    }
+
+    private static SSLContext countingContext(LongAdder handshakes) {
+        try {
+            SSLContext delegate = SSLContext.getInstance("TLS");
+            delegate.init(null, null, null);
+            return new CountingSslContext(delegate, handshakes);
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new IllegalStateException("TLS not available", e);
+        }
+    }
+
+    private static final class CountingSslContext extends SSLContext {
+        CountingSslContext(SSLContext delegate, LongAdder handshakes) {
+            super(new CountingSpi(delegate, handshakes), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static final class CountingSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final LongAdder handshakes;
+
+        CountingSpi(SSLContext delegate, LongAdder handshakes) {
+            this.delegate = delegate;
+            this.handshakes = handshakes;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            handshakes.increment();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            handshakes.increment();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
@@ -1,34 +1,188 @@
 package Util;
 
-import java.nio.file.*;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Callers only enqueue (time, thread, message); one background thread formats the lines and writes them
+// in batches to stdout and to a single open file channel. Logback goes through here too (LogUtilAppender),
+// so the run log has one writer. When the ring is full, log.overflow=block waits, drop counts and skips.
 public class LogUtil {
 
-    private static Path logFile;
+    // message == null is a file switch to path (null path: stdout only)
+    private record Line(long millis, String thread, String message, Path path) {
+    }
+
+    private static final int CAPACITY = 16_384;
+    private static final int BATCH = 512;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final BlockingQueue<Line> ring = new ArrayBlockingQueue<>(CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static volatile long written = 0;
+    private static volatile boolean dropWhenFull = false;
+
+    // Writer-side state, only touched by the log-writer thread
+    private static final FileChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+    private static FileChannel file;
+    private static long cachedSecond = Long.MIN_VALUE;
+    private static String cachedTimestamp = "";
+    private static final StringBuilder text = new StringBuilder(64 * 1024);
+
+    static {
+        Thread writer = new Thread(LogUtil::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Fallback for the tools; hooks run in no fixed order, so an entry point that logs from its own
+        // shutdown hook calls flush() at the end of it (BarchartCollect.shutdown)
+        Runtime.getRuntime().addShutdownHook(new Thread(LogUtil::flush, "log-flush"));
+    }
 
     public static void init(Path logFilePath) {
-        logFile = logFilePath;
+        enqueue(new Line(0, null, null, logFilePath));
+    }
+
+    public static void configure(ConfigLoader config) {
+        dropWhenFull = "drop".equalsIgnoreCase(config.getProperty("log.overflow", "block").trim());
     }
 
     public static void log(String message) {
-        String timestamp = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.now());
-        String threadName = Thread.currentThread().getName();
-        String line = "[" + timestamp + "] [Thread: " + threadName + "] " + message;
+        enqueue(new Line(System.currentTimeMillis(), Thread.currentThread().getName(), message, null));
+    }
 
-        System.out.println(line);
-        if (logFile != null) {
+    // Entry point for events that carry their own time and thread (Logback)
+    static void log(long millis, String thread, String message) {
+        enqueue(new Line(millis, thread, message, null));
+    }
+
+    // Waits (up to 5s) until the writer has written everything queued so far; also runs at JVM shutdown
+    public static void flush() {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written < target && System.nanoTime() < deadline) {
             try {
-                Files.writeString(logFile, line + System.lineSeparator(),
-                        StandardCharsets.UTF_8,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.APPEND);
-            } catch (Exception e) {
-                System.err.println("Logging failed: " + e.getMessage());
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
+    private static void enqueue(Line line) {
+        // offer() first: put() throws on an interrupted thread even when there is room
+        if (ring.offer(line)) {
+            enqueued.incrementAndGet();
+            return;
+        }
+        if (dropWhenFull && line.message() != null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // Really full: wait for the writer, interrupted or not, and hand the interrupt back afterwards
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ring.put(line);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        enqueued.incrementAndGet();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Single consumer: lines leave the ring in order and are written in batches
+    private static void drainLoop() {
+        List<Line> batch = new ArrayList<>(BATCH);
+        while (true) {
+            try {
+                batch.add(ring.take());
+                ring.drainTo(batch, BATCH - 1);
+                write(batch);
+                written += batch.size();
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void write(List<Line> batch) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            append(System.currentTimeMillis(), "log-writer", "⚠️ " + lost + " log lines dropped (ring full)");
+        }
+        for (Line line : batch) {
+            if (line.message() == null) {
+                emit();
+                reopen(line.path());
+            } else {
+                append(line.millis(), line.thread(), line.message());
+            }
+        }
+        emit();
+    }
+
+    private static void append(long millis, String thread, String message) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = TIMESTAMP.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        }
+        text.append('[').append(cachedTimestamp).append("] [Thread: ").append(thread).append("] ")
+                .append(message).append(System.lineSeparator());
+    }
+
+    // One write per batch and destination
+    private static void emit() {
+        if (text.isEmpty()) return;
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+        text.setLength(0);
+        writeFully(stdout, bytes.duplicate());
+        if (file != null) {
+            writeFully(file, bytes);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            System.err.println("Logging failed: " + e.getMessage());
+        }
+    }
+
+    private static void reopen(Path path) {
+        try {
+            if (file != null) file.close();
+        } catch (IOException ignored) {
+        }
+        file = null;
+        if (path == null) return;
+        try {
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Logging failed: cannot open " + path + ": " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package Util;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.AppenderBase;
+
+// Logback appender that hands events to LogUtil's writer, so library logs (Hikari, MySQL driver)
+// land in the same run log without a second file handle
+public class LogUtilAppender extends AppenderBase<ILoggingEvent> {
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        String message = event.getLevel() + " " + event.getLoggerName() + " - " + event.getFormattedMessage();
+        IThrowableProxy error = event.getThrowableProxy();
+        if (error != null) {
+            message += " (" + error.getClassName() + ": " + error.getMessage() + ")";
+        }
+        LogUtil.log(event.getTimeStamp(), event.getThreadName(), message);
+    }
+}
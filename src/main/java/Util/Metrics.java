@@ -0,0 +1,213 @@
+package Util;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Process-wide counters, latency histograms and gauges. Hot paths hold on to the Counter / Histogram they
+// update (one lookup at class init or per proxy), updates are lock-free. Exposed as Prometheus text on
+// metrics.port and summarized in the run log.
+public class Metrics {
+
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        public void inc() {
+            adder.increment();
+        }
+
+        public void add(long n) {
+            adder.add(n);
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    // Log-linear buckets over microseconds (8 per power of two, ~12% resolution), HdrHistogram style
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        public void recordNanos(long nanos) {
+            recordMicros(nanos / 1000);
+        }
+
+        // Convenience for the usual start = System.nanoTime() ... since(start)
+        public void since(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordMicros(long micros) {
+            long v = Math.max(0, micros);
+            buckets.incrementAndGet(index(v));
+            count.increment();
+            sumMicros.add(v);
+            maxMicros.accumulate(v);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        // Upper bound of the bucket holding the q-quantile, in microseconds
+        public long percentileMicros(double q) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros.get());
+            }
+            return maxMicros.get();
+        }
+
+        private static int index(long v) {
+            if (v < SUB) return (int) v;
+            int msb = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (msb - SUB_BITS)) - SUB;
+            return (msb - SUB_BITS + 1) * SUB + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB) return index;
+            int shift = index / SUB - 1;
+            long lower = (long) (SUB + index % SUB) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    // labels: alternating name, value
+    public static Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), k -> new Counter());
+    }
+
+    public static Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), k -> new Histogram());
+    }
+
+    public static void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    // metrics.port=0 disables the endpoint; the registry keeps counting either way
+    public static synchronized void serve(ConfigLoader config) {
+        int port = Integer.parseInt(config.getProperty("metrics.port", "0").trim());
+        if (port <= 0 || server != null) return;
+        String bind = config.getProperty("metrics.bind", "127.0.0.1").trim();
+        try {
+            server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            LogUtil.log("📈 Metrics on http://" + bind + ":" + port + "/metrics");
+        } catch (IOException e) {
+            LogUtil.log("⚠️ Metrics endpoint not started on " + bind + ":" + port + ": " + e.getMessage());
+        }
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Prometheus text format: histograms as summaries (quantiles, _sum, _count) in seconds
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder(8192);
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<Number>> e : new TreeMap<>(gauges).entrySet()) {
+            Number value;
+            try {
+                value = e.getValue().get();
+            } catch (RuntimeException ex) {
+                continue;
+            }
+            if (value != null) sb.append(e.getKey()).append(' ').append(value).append('\n');
+        }
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            String name = e.getKey();
+            int brace = name.indexOf('{');
+            String base = brace < 0 ? name : name.substring(0, brace);
+            String labels = brace < 0 ? "" : name.substring(brace + 1, name.length() - 1);
+            Histogram h = e.getValue();
+            for (double q : new double[]{0.5, 0.9, 0.99}) {
+                sb.append(base).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                        .append("quantile=\"").append(q).append("\"} ")
+                        .append(seconds(h.percentileMicros(q))).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(base).append("_sum").append(suffix).append(' ').append(seconds(h.sumMicros.sum())).append('\n');
+            sb.append(base).append("_count").append(suffix).append(' ').append(h.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // End-of-run digest, cumulative since the process started
+    public static String summary() {
+        StringBuilder sb = new StringBuilder("Metrics since start:");
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            if (h.count() == 0) continue;
+            sb.append("\n  ").append(e.getKey())
+                    .append(" n=").append(h.count())
+                    .append(" p50=").append(millis(h.percentileMicros(0.5)))
+                    .append(" p99=").append(millis(h.percentileMicros(0.99)))
+                    .append(" max=").append(millis(h.maxMicros.get()));
+        }
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            if (e.getValue().get() > 0) sb.append("\n  ").append(e.getKey()).append(' ').append(e.getValue().get());
+        }
+        return sb.toString();
+    }
+
+    private static String key(String name, String... labels) {
+        if (labels.length == 0) return name;
+        StringBuilder sb = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String seconds(long micros) {
+        return String.valueOf(micros / 1_000_000.0);
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.1fms", micros / 1000.0);
+    }
+}
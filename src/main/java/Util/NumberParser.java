@@ -1,28 +1,209 @@
 package Util;
 
+// Barchart's formatted numbers ("12,345.50", "+1.25", "18.42%", "N/A", "unch") parsed in place, without
+// allocating or throwing. A value that is missing or not a number comes back as a sentinel (NaN for doubles,
+// NULL_INT for ints) so the writers can store NULL instead of a made-up 0.
 public class NumberParser {
 
+    public static final int NULL_INT = Integer.MIN_VALUE;
+
+    // Exact powers of ten: m / 10^k is correctly rounded while m < 2^53 and k <= 22
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long EXACT_MANTISSA = 1L << 53;
+
+    public static boolean isNull(double value) {
+        return Double.isNaN(value);
+    }
+
+    public static boolean isNull(int value) {
+        return value == NULL_INT;
+    }
+
+    // "1,234.5", "+0.12", "-3", "45.67%" (the % is dropped, not divided), "unch" = 0; anything else NaN
+    public static double parseDouble(CharSequence text) {
+        if (text == null) return Double.NaN;
+        return parseDouble(null, text, 0, text.length());
+    }
+
+    public static double parseDouble(CharSequence text, int start, int end) {
+        return parseDouble(null, text, start, end);
+    }
+
+    // Same over a slice of a char buffer, e.g. JsonParser.getTextCharacters()
+    public static double parseDouble(char[] buf, int off, int len) {
+        return parseDouble(buf, null, off, off + len);
+    }
+
+    // "1,234", "+35", "0"; "unch" = 0; fractions, overflow and anything else NULL_INT
+    public static int parseInt(CharSequence text) {
+        if (text == null) return NULL_INT;
+        return parseInt(null, text, 0, text.length());
+    }
+
+    public static int parseInt(char[] buf, int off, int len) {
+        return parseInt(buf, null, off, off + len);
+    }
+
+    // "18.42%" as a fraction (0.1842), NaN when missing
+    public static double parseVolatility(CharSequence text) {
+        return parseDouble(text) / 100.0;
+    }
+
+    public static double parseVolatility(char[] buf, int off, int len) {
+        return parseDouble(buf, off, len) / 100.0;
+    }
+
+    // Old behaviour for callers that want 0 on a missing value
     public static int parseIntSafe(String text) {
-        if (text == null || text.isEmpty()) return 0;
-        try {
-            return Integer.parseInt(text.replace(",", "").trim());
-        } catch (NumberFormatException e) {
-            return 0;
-        }
+        int value = parseInt(text);
+        return value == NULL_INT ? 0 : value;
     }
 
     public static double parseDoubleSafe(String text) {
-        if (text == null || text.isEmpty()) return 0.0;
-        try {
-            return Double.parseDouble(text.replace(",", "").trim());
-        } catch (NumberFormatException e) {
-            return 0.0;
+        double value = parseDouble(text);
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    // Exactly one of buf / seq is set; positions are absolute in either
+    private static char at(char[] buf, CharSequence seq, int i) {
+        return buf != null ? buf[i] : seq.charAt(i);
+    }
+
+    private static double parseDouble(char[] buf, CharSequence seq, int start, int end) {
+        while (start < end && at(buf, seq, start) <= ' ') start++;
+        while (end > start && at(buf, seq, end - 1) <= ' ') end--;
+        if (end > start && at(buf, seq, end - 1) == '%') {
+            end--;
+            while (end > start && at(buf, seq, end - 1) <= ' ') end--;     // "18.42 %"
+        }
+        if (start == end) return Double.NaN;
+        if (isUnchanged(buf, seq, start, end)) return 0.0;
+
+        int i = start;
+        boolean negative = false;
+        char c = at(buf, seq, i);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;         // significant digits kept in mantissa
+        int scale = 0;          // decimal exponent applied to mantissa
+        boolean any = false;
+        boolean dot = false;
+        boolean exact = true;
+        for (; i < end; i++) {
+            c = at(buf, seq, i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa == 0 && c == '0') {
+                    if (dot) scale--;
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (dot) scale--;
+                } else {
+                    exact = false;
+                    if (!dot) scale++;
+                }
+            } else if (c == ',' && !dot) {
+                // thousands separator
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) return Double.NaN;
+        if (i < end && (c == 'e' || c == 'E')) {
+            int exp = parseExponent(buf, seq, i + 1, end);
+            if (exp == NULL_INT) return Double.NaN;
+            scale += exp;
+            i = end;
+        }
+        if (i != end) return Double.NaN;
+
+        if (exact && mantissa < EXACT_MANTISSA && scale >= -22 && scale <= 22) {
+            double value = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+            return negative ? -value : value;
+        }
+        return slowParse(buf, seq, start, end);
+    }
+
+    // Signed exponent digits up to end, NULL_INT when malformed
+    private static int parseExponent(char[] buf, CharSequence seq, int i, int end) {
+        if (i == end) return NULL_INT;
+        boolean negative = false;
+        char c = at(buf, seq, i);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            i++;
+        }
+        if (i == end) return NULL_INT;
+        int exp = 0;
+        for (; i < end; i++) {
+            c = at(buf, seq, i);
+            if (c < '0' || c > '9') return NULL_INT;
+            exp = Math.min(exp * 10 + (c - '0'), 10_000);
+        }
+        return negative ? -exp : exp;
+    }
+
+    // Long mantissas and big exponents are rare; let the JDK round those (already validated, so no throw)
+    private static double slowParse(char[] buf, CharSequence seq, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = at(buf, seq, i);
+            if (c != ',') sb.append(c);
+        }
+        double value = Double.parseDouble(sb.toString());
+        return Double.isInfinite(value) ? Double.NaN : value;
+    }
+
+    private static int parseInt(char[] buf, CharSequence seq, int start, int end) {
+        while (start < end && at(buf, seq, start) <= ' ') start++;
+        while (end > start && at(buf, seq, end - 1) <= ' ') end--;
+        if (start == end) return NULL_INT;
+        if (isUnchanged(buf, seq, start, end)) return 0;
+
+        int i = start;
+        boolean negative = false;
+        char c = at(buf, seq, i);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            i++;
+        }
+        long value = 0;
+        boolean any = false;
+        for (; i < end; i++) {
+            c = at(buf, seq, i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) return NULL_INT;
+                any = true;
+            } else if (c != ',') {
+                break;
+            }
+        }
+        // "1,234.00" is still an int, "12.5" is not
+        if (i < end && c == '.') {
+            i++;
+            while (i < end && at(buf, seq, i) == '0') i++;
         }
+        if (!any || i != end) return NULL_INT;
+        return (int) (negative ? -value : value);
     }
 
-    public static double parseVolatility(String text) {
-        if (text == null || text.isEmpty()) return 0.0;
-        text = text.replace("%", "").trim();
-        return parseDoubleSafe(text) / 100.0;
+    // Barchart prints "unch" for a zero change
+    private static boolean isUnchanged(char[] buf, CharSequence seq, int start, int end) {
+        return end - start == 4
+                && (at(buf, seq, start) | 0x20) == 'u'
+                && (at(buf, seq, start + 1) | 0x20) == 'n'
+                && (at(buf, seq, start + 2) | 0x20) == 'c'
+                && (at(buf, seq, start + 3) | 0x20) == 'h';
     }
 }
@@ -0,0 +1,76 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Live health of one proxy: smoothed latency / error rate and quarantine state
+class ProxyHealth {
+
+    private static final double ALPHA = 0.2;                 // EWMA weight of the newest sample
+    private static final long BASE_QUARANTINE_MS = 15_000;
+    private static final long MAX_QUARANTINE_MS = 10 * 60_000;
+
+    private double latencyMs = 1_000;                        // pessimistic start until measured
+    private double errorRate = 0.0;
+    private int consecutiveFailures = 0;
+    private long quarantinedUntil = 0;
+    private boolean quarantined = false;
+    private long lastUsed = 0;
+
+    final AtomicInteger inFlight = new AtomicInteger();
+
+    // A Barchart request went through: the only thing that ends the quarantine backoff streak
+    synchronized void recordSuccess(long latencyMillis) {
+        latencyMs = latencyMs + ALPHA * (latencyMillis - latencyMs);
+        errorRate = errorRate * (1 - ALPHA);
+        consecutiveFailures = 0;
+        lastUsed = System.currentTimeMillis();
+    }
+
+    // Answered, but not a success against Barchart (ipify probe, 404, 5xx): latency only, streak kept
+    synchronized void recordLatency(long latencyMillis) {
+        latencyMs = latencyMs + ALPHA * (latencyMillis - latencyMs);
+        lastUsed = System.currentTimeMillis();
+    }
+
+    synchronized void recordFailure() {
+        errorRate = errorRate + ALPHA * (1 - errorRate);
+        lastUsed = System.currentTimeMillis();
+    }
+
+    // Exponential backoff: 15s, 30s, 60s ... capped at 10 minutes
+    synchronized long quarantine() {
+        consecutiveFailures++;
+        long backoff = Math.min(MAX_QUARANTINE_MS, BASE_QUARANTINE_MS << Math.min(consecutiveFailures - 1, 10));
+        quarantined = true;
+        quarantinedUntil = System.currentTimeMillis() + backoff;
+        return backoff;
+    }
+
+    synchronized void release() {
+        quarantined = false;
+        quarantinedUntil = 0;
+    }
+
+    synchronized boolean isQuarantined() {
+        return quarantined;
+    }
+
+    // Quarantine elapsed, the prober should check whether the proxy recovered
+    synchronized boolean isDueForProbe(long now, long idleMillis) {
+        return quarantined ? now >= quarantinedUntil : now - lastUsed >= idleMillis;
+    }
+
+    synchronized long quarantinedUntil() {
+        return quarantinedUntil;
+    }
+
+    // Lower is better: latency inflated by error rate and current load
+    synchronized double score() {
+        return latencyMs * (1 + 4 * errorRate) * (1 + inFlight.get());
+    }
+
+    synchronized String describe() {
+        return String.format("latency=%.0fms, errors=%.0f%%, inFlight=%d%s",
+                latencyMs, errorRate * 100, inFlight.get(), quarantined ? ", quarantined" : "");
+    }
+}
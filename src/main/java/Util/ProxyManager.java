@@ -1,29 +1,74 @@
 package Util;
 
 import java.net.InetSocketAddress;
-import java.net.ProxySelector;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class ProxyManager {
 
     private final List<InetSocketAddress> proxies = new ArrayList<>();
-    private final Set<InetSocketAddress> badProxies = Collections.synchronizedSet(new HashSet<>());
-    private final AtomicInteger counter = new AtomicInteger(0);
+    private final Map<InetSocketAddress, ProxyHealth> health = new ConcurrentHashMap<>();
+    private final Map<InetSocketAddress, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+    private final boolean rateLimitEnabled;
+    private final AtomicReference<InetSocketAddress> lastSelected = new AtomicReference<>();
     private final boolean useRotation;
+    private final long probeIntervalSeconds;
+    private ScheduledExecutorService prober;
     private final Consumer<String> logger;
 
-    // Cache HttpClient for each proxy
-    private final Map<InetSocketAddress, HttpClient> proxyClients = new HashMap<>();
+    // Max in-flight requests per proxy, so hundreds of virtual threads cannot pile onto one exit IP
+    private final int maxPerProxy;
+    private final Map<InetSocketAddress, Semaphore> proxyPermits = new ConcurrentHashMap<>();
+
+    // Metric handles per proxy, resolved once so send() does no registry lookups
+    private record ProxyMetrics(Metrics.Histogram latency, Metrics.Histogram queued, Metrics.Counter ok,
+                                Metrics.Counter redirect, Metrics.Counter clientError, Metrics.Counter serverError,
+                                Metrics.Counter timeout, Metrics.Counter error) {
+        static ProxyMetrics of(String proxy) {
+            return new ProxyMetrics(
+                    Metrics.histogram("http_request_seconds", "proxy", proxy),
+                    Metrics.histogram("proxy_wait_seconds", "proxy", proxy),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "2xx"),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "3xx"),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "4xx"),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "5xx"),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "timeout"),
+                    Metrics.counter("http_requests_total", "proxy", proxy, "outcome", "error"));
+        }
+
+        void status(int code) {
+            if (code < 300) ok.inc();
+            else if (code < 400) redirect.inc();
+            else if (code < 500) clientError.inc();
+            else serverError.inc();
+        }
+    }
+
+    private final Map<InetSocketAddress, ProxyMetrics> metrics = new ConcurrentHashMap<>();
+    private final ProxyMetrics directMetrics = ProxyMetrics.of("direct");
 
     public ProxyManager(ConfigLoader config, Consumer<String> logger) {
         this.logger = logger;
+        this.maxPerProxy = Integer.parseInt(config.getProperty("proxy.maxConcurrent", "4").trim());
+        this.probeIntervalSeconds = Long.parseLong(config.getProperty("proxy.probe.seconds", "15").trim());
+        this.rateLimitEnabled = Boolean.parseBoolean(config.getProperty("ratelimit.enabled", "true").trim());
 
         String proxyList = config.getProperty("proxy.list", "").trim();
         boolean rotationFlag = false;
@@ -72,20 +117,206 @@ public class ProxyManager {
             }
         }
         this.useRotation = rotationFlag;
+        for (InetSocketAddress proxy : proxies) {
+            health.put(proxy, new ProxyHealth());
+            limiters.put(proxy, AdaptiveRateLimiter.fromConfig(config));
+            metrics.put(proxy, ProxyMetrics.of(proxy.getHostString() + ":" + proxy.getPort()));
+        }
     }
 
-    // Get the next proxy from the list, avoiding bad ones
+    public List<InetSocketAddress> getProxies() {
+        return Collections.unmodifiableList(proxies);
+    }
+
+    // Power-of-two-choices over healthy proxies: sample two, keep the lower latency/error/load score
     public InetSocketAddress getNextProxy() {
         if (proxies.isEmpty()) return null;
+        if (!useRotation) return select(proxies.get(0));
+
+        List<InetSocketAddress> healthy = new ArrayList<>(proxies.size());
+        for (InetSocketAddress proxy : proxies) {
+            if (!health.get(proxy).isQuarantined()) healthy.add(proxy);
+        }
 
-        for (int i = 0; i < proxies.size(); i++) {
-            int index = useRotation ? counter.getAndIncrement() % proxies.size() : 0;
-            InetSocketAddress proxy = proxies.get(index);
-            if (!badProxies.contains(proxy)) {
-                return proxy;
+        if (healthy.isEmpty()) {
+            // Everything is quarantined: use the one closest to release rather than going direct
+            return select(proxies.stream()
+                    .min(Comparator.comparingLong(p -> health.get(p).quarantinedUntil()))
+                    .orElseThrow());
+        }
+        if (healthy.size() == 1) return select(healthy.get(0));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(healthy.size());
+        int b = random.nextInt(healthy.size() - 1);
+        if (b >= a) b++;
+        InetSocketAddress first = healthy.get(a);
+        InetSocketAddress second = healthy.get(b);
+        return select(score(first) <= score(second) ? first : second);
+    }
+
+    // Health score plus the time the proxy's rate limiter would make us wait
+    private double score(InetSocketAddress proxy) {
+        return health.get(proxy).score() + (rateLimitEnabled ? limiters.get(proxy).waitMillis() : 0);
+    }
+
+    private InetSocketAddress select(InetSocketAddress proxy) {
+        lastSelected.set(proxy);
+        return proxy;
+    }
+
+    // Send a request through the given proxy, respecting its rate and concurrency limits.
+    // An InputStream body keeps its permit until the caller closes it, so always close it.
+    public <T> HttpResponse<T> send(InetSocketAddress proxy, HttpRequest request,
+                                    HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        HttpClient client = HttpClientRegistry.get(proxy);
+        HttpClientRegistry.recordRequest(proxy);
+        ProxyHealth proxyHealth = proxy == null ? null : health.get(proxy);
+        if (proxyHealth == null) {
+            long start = System.nanoTime();
+            try {
+                HttpResponse<T> response = client.send(request, handler);
+                directMetrics.latency().since(start);
+                directMetrics.status(response.statusCode());
+                return response;
+            } catch (HttpTimeoutException e) {
+                directMetrics.timeout().inc();
+                throw e;
+            } catch (IOException e) {
+                directMetrics.error().inc();
+                throw e;
             }
         }
-        return null; // all proxies marked bad
+        ProxyMetrics proxyMetrics = metrics.get(proxy);
+
+        long waitStart = System.nanoTime();
+        AdaptiveRateLimiter limiter = rateLimitEnabled ? limiters.get(proxy) : null;
+        if (limiter != null) limiter.acquire();
+
+        Semaphore permits = maxPerProxy > 0
+                ? proxyPermits.computeIfAbsent(proxy, p -> new Semaphore(maxPerProxy, true))
+                : null;
+        if (permits != null) permits.acquire();
+        proxyHealth.inFlight.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                proxyHealth.inFlight.decrementAndGet();
+                if (permits != null) permits.release();
+            }
+        };
+        boolean heldByBody = false;
+        long start = System.nanoTime();
+        proxyMetrics.queued().recordNanos(start - waitStart);
+        try {
+            // A streamed body is still transferring when send() returns: its close() gives the permit back
+            HttpResponse<T> response = client.send(request, info ->
+                    HttpResponse.BodySubscribers.mapping(handler.apply(info), body -> releaseOnClose(body, release)));
+            heldByBody = response.body() instanceof InputStream;
+            long elapsed = System.nanoTime() - start;
+            long latencyMillis = elapsed / 1_000_000;
+            int status = response.statusCode();
+            if (isBlocked(status)) {
+                proxyHealth.recordFailure();   // a banned proxy answers 403 fast; that is not a good latency
+            } else if (status < 400) {
+                proxyHealth.recordSuccess(latencyMillis);
+            } else {
+                proxyHealth.recordLatency(latencyMillis);
+            }
+            proxyMetrics.latency().recordNanos(elapsed);
+            proxyMetrics.status(response.statusCode());
+            if (limiter != null) limiter.onResponse(response.statusCode(), response.headers(), latencyMillis);
+            return response;
+        } catch (HttpTimeoutException e) {
+            proxyHealth.recordFailure();
+            proxyMetrics.timeout().inc();
+            if (limiter != null) limiter.onTimeout();
+            throw e;
+        } catch (IOException e) {
+            proxyHealth.recordFailure();
+            proxyMetrics.error().inc();
+            throw e;
+        } finally {
+            if (!heldByBody) release.run();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T releaseOnClose(T body, Runnable release) {
+        if (!(body instanceof InputStream in)) return body;
+        return (T) new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+    }
+
+    // Background prober: re-checks quarantined proxies and refreshes latency of idle ones, off the hot path
+    public synchronized void startHealthProber() {
+        if (prober != null || proxies.isEmpty() || probeIntervalSeconds <= 0) return;
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "proxy-prober");
+            t.setDaemon(true);
+            return t;
+        });
+        prober.scheduleWithFixedDelay(this::probeDueProxies, probeIntervalSeconds, probeIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopHealthProber() {
+        if (prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    private void probeDueProxies() {
+        long now = System.currentTimeMillis();
+        long idleMillis = probeIntervalSeconds * 4_000;
+        for (InetSocketAddress proxy : proxies) {
+            ProxyHealth proxyHealth = health.get(proxy);
+            if (!proxyHealth.isDueForProbe(now, idleMillis)) continue;
+
+            boolean wasQuarantined = proxyHealth.isQuarantined();
+            long start = System.nanoTime();
+            String ip = getPublicIP(HttpClientRegistry.get(proxy));
+            if (isIpAddress(ip)) {
+                // Reaching ipify says nothing about Barchart, so the backoff streak is not reset here
+                proxyHealth.recordLatency((System.nanoTime() - start) / 1_000_000);
+                if (wasQuarantined) {
+                    proxyHealth.release();
+                    logger.accept("Proxy recovered: " + proxy + " (public IP " + ip + ")");
+                }
+            } else {
+                proxyHealth.recordFailure();
+                if (wasQuarantined) {
+                    long backoff = proxyHealth.quarantine();
+                    logger.accept("Proxy still failing: " + proxy + ", next probe in " + backoff / 1000 + "s (" + ip + ")");
+                }
+            }
+        }
+    }
+
+    // Barchart's answer for a banned or throttled proxy
+    private static boolean isBlocked(int statusCode) {
+        return statusCode == 403 || statusCode == 429;
+    }
+
+    private static boolean isIpAddress(String text) {
+        return text.matches("[0-9a-fA-F:.]+");
+    }
+
+    public String healthSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (InetSocketAddress proxy : proxies) {
+            sb.append(System.lineSeparator()).append("   ").append(proxy).append(" -> ").append(health.get(proxy).describe());
+            if (rateLimitEnabled) sb.append(", ").append(limiters.get(proxy).describe());
+        }
+        return sb.toString();
     }
 
     // Fetch the public IP for a given HttpClient
@@ -106,36 +337,23 @@ public class ProxyManager {
         }
     }
 
-    // Get the current proxy (if rotation is enabled, get the next one)
+    // Last proxy handed out by getNextProxy
     public InetSocketAddress getCurrentProxy() {
         if (proxies.isEmpty()) return null;
-        if (useRotation) {
-            int index = (counter.get() - 1 + proxies.size()) % proxies.size();
-            return proxies.get(index);
-        }
-        return proxies.get(0);
+        InetSocketAddress proxy = lastSelected.get();
+        return proxy != null ? proxy : proxies.get(0);
     }
 
-    // Mark a proxy as bad
+    // Quarantine a failing proxy, the prober returns it to rotation once it answers again
     public void markProxyBad(InetSocketAddress proxy) {
-        badProxies.add(proxy);
-        logger.accept("Proxy marked as bad: " + proxy);
+        ProxyHealth proxyHealth = proxy == null ? null : health.get(proxy);
+        if (proxyHealth == null) return;
+        long backoff = proxyHealth.quarantine();
+        logger.accept("Proxy quarantined for " + backoff / 1000 + "s: " + proxy);
     }
 
-    // Get or create HttpClient for the given proxy
+    // Shared HttpClient for the given proxy
     public HttpClient getHttpClientForProxy(InetSocketAddress proxy) {
-        if (proxyClients.containsKey(proxy)) {
-            return proxyClients.get(proxy); // Reuse existing HttpClient
-        }
-
-        // Create a new HttpClient for the proxy
-        HttpClient client = HttpClient.newBuilder()
-                .proxy(ProxySelector.of(proxy))
-                .connectTimeout(Duration.ofSeconds(30))
-                .build();
-
-        // Cache the HttpClient for reuse
-        proxyClients.put(proxy, client);
-        return client;
+        return HttpClientRegistry.get(proxy);
     }
 }
@@ -1,11 +1,9 @@
 package apicall;
 
 import Util.*;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.InputStream;
 import java.net.*;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.*;
@@ -14,10 +12,8 @@ import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-
-import static Util.ProxyManager.getPublicIP;
 
 public class BarchartCollect {
 
@@ -32,24 +28,33 @@ public class BarchartCollect {
             System.out.println("    -> Processes only symbols with Priority=1");
             System.out.println("  java -cp yourJar.jar apicall.BarchartCollect priority 8");
             System.out.println("    -> Processes only Priority=1 symbols using 8 threads");
+            System.out.println("  java -cp yourJar.jar apicall.BarchartCollect daemon [priority [threads]]");
+            System.out.println("    -> Stays resident and runs every cycle on the CycleHelper schedule");
+            return;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("daemon")) {
+            runDaemon(Arrays.copyOfRange(args, 1, args.length));
             return;
         }
 
         ConfigLoader config = new ConfigLoader();
         initLogFile(config);
         int threadCount = getThreadCount(args);
-        ConnectionPool.init(config, threadCount);
-        ProxyManager proxyManager = new ProxyManager(config, LogUtil::log);
+        ProxyManager proxyManager = initRuntime(config, threadCount);
 
         List<String> tickers;
+        String queueName = "all";
         if (args.length >= 1) {
             String arg = args[0].trim().toLowerCase();
             if ("priority".equals(arg)) {
                 LogUtil.log("Running in PRIORITY mode (only Priority=1 symbols)");
                 tickers = loadTickers(true);
+                queueName = "priority";
             } else {
                 LogUtil.log("Running in single-symbol mode for: " + args[0]);
                 tickers = Collections.singletonList(args[0].toUpperCase());
+                queueName = null;
             }
         } else {
             tickers = loadTickers(false);
@@ -59,13 +64,132 @@ public class BarchartCollect {
             }
         }
 
+        ExecutorService executor = createExecutor(config, threadCount);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(executor), "shutdown"));
+        int maxInFlight = getMaxInFlight(config, args, threadCount);
+        runCycle(tickers, queueName, executor, maxInFlight, config, proxyManager);
+        shutdown(executor);
+    }
+
+    // Pool, proxies, HTTP state, writers and metrics shared by the one-shot and daemon modes
+    private static ProxyManager initRuntime(ConfigLoader config, int threadCount) {
+        // Virtual threads do not need one connection per worker, DB access is gated inside ConnectionPool
+        ConnectionPool.init(config, isVirtualMode(config) ? 0 : threadCount);
+        ProxyManager proxyManager = new ProxyManager(config, LogUtil::log);
+        HttpClientRegistry.init(config);
+        BarchartSessionCache.init(config);
+        OptionChainWriter.init(config);
+        ChainFingerprintCache.init(config);
+        SymbolScheduler.init(config);
+        WorkQueue.init(config);
+        WriteBehindQueue.init(config);
+        proxyManager.startHealthProber();
+        Metrics.serve(config);
+        return proxyManager;
+    }
+
+    private static final AtomicBoolean shutDown = new AtomicBoolean(false);
+
+    // Normal exit and the shutdown hook (kill, container stop): drain the write-behind lanes, then close.
+    // The log is flushed last so the lines written while draining are not lost when the JVM halts.
+    private static void shutdown(ExecutorService executor) {
+        if (!shutDown.compareAndSet(false, true)) return;
+        executor.shutdownNow();
+        WriteBehindQueue.close();
+        ConnectionPool.close();
+        Metrics.stop();
+        LogUtil.flush();
+    }
+
+    // Resident mode: pool, proxies, HTTP state and tickers stay warm between cycles
+    private static void runDaemon(String[] args) throws Exception {
+        ConfigLoader config = new ConfigLoader();
+        initLogFile(config);
+        int threadCount = getThreadCount(args);
+        ProxyManager proxyManager = initRuntime(config, threadCount);
+        ExecutorService executor = createExecutor(config, threadCount);
+        int maxInFlight = getMaxInFlight(config, args, threadCount);
+
+        boolean priorityOnly = args.length >= 1 && "priority".equalsIgnoreCase(args[0].trim());
+        LogUtil.log("🛰️ Running in DAEMON mode" + (priorityOnly ? " (only Priority=1 symbols)" : ""));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(executor), "shutdown"));
+
+        List<String> tickers = Collections.emptyList();
+        LocalDate tickersDate = null;
+
+        while (true) {
+            ZonedDateTime nextRun = CycleHelper.getNextRunTime(ZonedDateTime.now(CycleHelper.NEW_YORK));
+            LogUtil.log("💤 Next cycle scheduled at " + nextRun.toLocalDateTime());
+            long waitMillis = Duration.between(ZonedDateTime.now(CycleHelper.NEW_YORK), nextRun).toMillis();
+            if (waitMillis > 0) {
+                Thread.sleep(waitMillis);
+            }
+
+            // Refresh the ticker list once per trading day, reuse it for the other cycles
+            LocalDate today = LocalDate.now(CycleHelper.NEW_YORK);
+            if (!today.equals(tickersDate) || tickers.isEmpty()) {
+                try {
+                    tickers = loadTickers(priorityOnly);
+                    tickersDate = today;
+                    LogUtil.log("📋 Loaded " + tickers.size() + " tickers for " + today);
+                } catch (Exception e) {
+                    LogUtil.log("❌ Failed to reload tickers, keeping previous list: " + e.getMessage());
+                }
+            }
+            if (tickers.isEmpty()) {
+                LogUtil.log("No tickers found in symbol_list.");
+                continue;
+            }
 
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            initLogFile(config);
+            try {
+                runCycle(tickers, priorityOnly ? "priority" : "all", executor, maxInFlight, config, proxyManager);
+            } catch (Exception e) {
+                LogUtil.log("❌ Cycle failed: " + e.getMessage());
+            }
+        }
+    }
 
+    // queueName: the shared work queue this list belongs to, null for a single-symbol run
+    private static void runCycle(List<String> tickers, String queueName, ExecutorService executor, int maxInFlight,
+                                 ConfigLoader config, ProxyManager proxyManager) {
         AtomicInteger completedCount = new AtomicInteger(0);
         long startTime = System.nanoTime();
 
-        LogUtil.log("🚀 Starting processing of " + tickers.size() + " symbols using " + threadCount + " threads...");
+        BarchartSessionCache.prewarm(proxyManager);
+
+        // Stages already committed for this cycle by an earlier (killed or crashed) run
+        String cycleRange = CycleHelper.getCycleRange();
+        java.sql.Date cycleDate = java.sql.Date.valueOf(LocalDate.now(CycleHelper.NEW_YORK));
+        Map<String, Integer> checkpoints = loadCheckpoints(cycleDate, cycleRange);
+        List<String> pending = tickers.stream()
+                .filter(t -> !CollectCheckpoint.has(checkpoints.getOrDefault(t, 0), CollectCheckpoint.ALL))
+                .toList();
+        if (!checkpoints.isEmpty()) {
+            int complete = tickers.size() - pending.size();
+            LogUtil.log("📌 Resuming " + cycleRange + ": " + complete + " symbols complete, "
+                    + (checkpoints.size() - complete) + " partial");
+        }
+
+        // Longest first within the window, what cannot fit is reported (or deferred) up front
+        SymbolScheduler.Plan plan = SymbolScheduler.plan(pending, maxInFlight);
+        List<String> order = plan.order();
+
+        // Several containers on the same list share the cycle through the lease queue
+        WorkQueue queue = null;
+        if (queueName != null && WorkQueue.isEnabled()) {
+            try {
+                queue = WorkQueue.open(queueName, cycleDate, cycleRange, order);
+            } catch (SQLException e) {
+                LogUtil.log("⚠️ Work queue unavailable, collecting the whole list locally: " + e.getMessage());
+            }
+        }
+        WorkQueue shared = queue;
+        Iterator<String> local = order.iterator();
+
+        LogUtil.log("🚀 Starting processing of " + order.size() + " symbols with up to " + maxInFlight + " in flight"
+                + (shared != null ? " (shared queue '" + queueName + "')..." : "..."));
 
         // Periodic logger for progress
         ScheduledExecutorService progressLogger = Executors.newSingleThreadScheduledExecutor();
@@ -75,41 +199,81 @@ public class BarchartCollect {
             double elapsedMinutes = elapsedNano / 1_000_000_000.0 / 60.0;
             double speed = elapsedMinutes > 0 ? done / elapsedMinutes : 0.0;
 
-            LogUtil.log("⏳ Progress: " + done + "/" + tickers.size() +
+            LogUtil.log("⏳ Progress: " + done + "/" + order.size() +
                     " completed | " + String.format("%.2f", speed) + " symbols/min");
 
             // Stop logging when all are completed
-            if (done >= tickers.size()) {
+            if (done >= order.size()) {
                 LogUtil.log("🛑 Progress logging stopping — all tickers processed.");
                 progressLogger.shutdown();
             }
         }, 60, 60, TimeUnit.SECONDS); // Initial delay: 60s, Interval: 60s
 
-        // Submit tasks
-        for (String ticker : tickers) {
-            executor.submit(() -> {
+        // Submit tasks, never more than maxInFlight symbols at once
+        // Stages this node got in during the cycle, so a symbol leased again resumes instead of starting over
+        Map<String, Integer> progress = new ConcurrentHashMap<>();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<Future<?>> futures = new ArrayList<>(order.size());
+        while (true) {
+            String ticker;
+            try {
+                inFlight.acquire();
+                // A slot is free before a symbol is started, claimed symbols do not sit behind local work
+                ticker = shared != null ? shared.next() : (local.hasNext() ? local.next() : null);
+            } catch (InterruptedException e) {
+                LogUtil.log("⚠️ Interrupted while submitting tickers.");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                LogUtil.log("❌ Work queue failed, stopping this node's share of the cycle: " + e.getMessage());
+                inFlight.release();
+                break;
+            }
+            if (ticker == null) {
+                inFlight.release();
+                break;
+            }
+            int done = checkpoints.getOrDefault(ticker, 0) | progress.getOrDefault(ticker, 0);
+            futures.add(executor.submit(() -> {
+                boolean ok = false;
                 try {
-                    java.sql.Date updateDate = new java.sql.Date(System.currentTimeMillis());
-                    processTicker(ticker, proxyManager);
-
-                    BarchartOptionChainCollect.collectOptionChains(ticker, updateDate, config, proxyManager);
-                    BarchartHtmlFetcher.fetchAndStoreVolatilityData(ticker, config, proxyManager);
-
-                    LogUtil.log("✅ Completed processing for: " + ticker);
-                    completedCount.incrementAndGet();
+                    int stages = collectSymbol(ticker, done, cycleRange, cycleDate, config, proxyManager);
+                    progress.merge(ticker, stages, (a, b) -> a | b);
+                    ok = CollectCheckpoint.has(stages, CollectCheckpoint.ALL);
+                    if (ok) {
+                        LogUtil.log("✅ Completed processing for: " + ticker);
+                        completedCount.incrementAndGet();
+                    } else {
+                        LogUtil.log("⚠️ Incomplete: " + ticker + " (stage mask " + stages + " of " + CollectCheckpoint.ALL + ")");
+                    }
                 } catch (Exception e) {
                     LogUtil.log("❌ Error processing ticker " + ticker + ": " + e.getMessage());
+                } finally {
+                    if (shared != null) shared.complete(ticker, ok);
+                    inFlight.release();
                 }
-            });
+            }));
         }
 
-        executor.shutdown();
+        // Wait for this cycle only, the executor stays alive in daemon mode
         try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (Future<?> future : futures) {
+                future.get();
+            }
         } catch (InterruptedException e) {
             LogUtil.log("⚠️ Executor interrupted while waiting for tasks to finish.");
             Thread.currentThread().interrupt(); // Restore interrupt status
+        } catch (ExecutionException e) {
+            LogUtil.log("⚠️ Task failed: " + e.getCause());
+        }
+        progressLogger.shutdownNow();
+        if (shared != null) shared.close();
+        try {
+            WriteBehindQueue.awaitIdle();   // the cycle is done once its rows are committed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        SymbolScheduler.save(plan);
 
         // Final timing and summary
         long endTime = System.nanoTime();
@@ -120,11 +284,37 @@ public class BarchartCollect {
         LogUtil.log("✅ All tickers processed.");
         LogUtil.log("⏱️  Total time: " + String.format("%.2f", durationMinutes) + " minutes");
         LogUtil.log("⚡ Final speed: " + String.format("%.2f", finalSpeed) + " symbols per minute");
+        LogUtil.log("✍️ " + WriteBehindQueue.stats());
+        LogUtil.log("🧬 " + ChainFingerprintCache.stats());
+        LogUtil.log("🍪 " + BarchartSessionCache.stats());
+        LogUtil.log("🔗 " + HttpClientRegistry.stats());
+        LogUtil.log("🌐 Proxy health:" + proxyManager.healthSummary());
+        LogUtil.log("📊 " + Metrics.summary());
+    }
 
-        ConnectionPool.close();
+
+
+    // executor.mode=virtual runs each symbol on its own virtual thread, the work is almost all blocking I/O
+    private static ExecutorService createExecutor(ConfigLoader config, int threadCount) {
+        if (isVirtualMode(config)) {
+            LogUtil.log("🧵 Executor mode: virtual threads");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("collector-", 0).factory());
+        }
+        LogUtil.log("🧵 Executor mode: " + threadCount + " platform threads");
+        return Executors.newFixedThreadPool(threadCount);
     }
 
+    private static boolean isVirtualMode(ConfigLoader config) {
+        return "virtual".equalsIgnoreCase(config.getProperty("executor.mode", "platform").trim());
+    }
 
+    // Symbols in flight: the thread count for platform threads, virtual.maxSymbols (or args[1]) for virtual threads
+    private static int getMaxInFlight(ConfigLoader config, String[] args, int threadCount) {
+        if (!isVirtualMode(config) || args.length >= 2) {
+            return threadCount;
+        }
+        return Integer.parseInt(config.getProperty("virtual.maxSymbols", "200").trim());
+    }
 
     private static int getThreadCount(String[] args) {
         int threadCount;
@@ -153,10 +343,8 @@ public class BarchartCollect {
         String timestamp = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").format(LocalDateTime.now());
         Path logFile = logDirPath.resolve("barchart_" + timestamp + ".log");
 
-        LogUtil.init(logFile);
-
-        // 🔁 Tell Logback to use the same file
-        System.setProperty("logFile", logFile.toString());
+        LogUtil.configure(config);
+        LogUtil.init(logFile);   // Logback's LogUtilAppender follows the switch
     }
 
     private static List<String> loadTickers( boolean priorityOnly) throws Exception {
@@ -175,34 +363,114 @@ public class BarchartCollect {
         return tickers;
     }
 
-    private static void processTicker(String ticker, ProxyManager proxyManager) {
+    private static Map<String, Integer> loadCheckpoints(java.sql.Date cycleDate, String cycleRange) {
+        try {
+            return CollectCheckpoint.load(cycleDate, cycleRange);
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Could not load checkpoints, collecting every stage: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    private static final Metrics.Histogram EXPIRATIONS_API = Metrics.histogram("stage_seconds", "stage", "expirations_api");
+    private static final Metrics.Histogram EXPIRATIONS_DECODE = Metrics.histogram("stage_seconds", "stage", "expirations_decode");
+    private static final Metrics.Histogram SYMBOL = Metrics.histogram("stage_seconds", "stage", "symbol");
+    private static final Metrics.Counter EXPIRATIONS_RETRIES = Metrics.counter("retries_total", "stage", "expirations");
+    private static final Metrics.Counter VOLATILITY_RETRIES = Metrics.counter("retries_total", "stage", "volatility");
+
+    // Runs the stages missing from the checkpoint and returns the stage mask the symbol has now (queued for
+    // the writer); ALL means complete. The cycle key is the one loaded at cycle start, a symbol reached after
+    // the window rolled over is collected in full under the new cycle
+    private static int collectSymbol(String ticker, int done, String cycleRange, java.sql.Date cycleDate,
+                                     ConfigLoader config, ProxyManager proxyManager) throws Exception {
+        if (!cycleRange.equals(CycleHelper.getCycleRange())) {
+            done = 0;
+        }
+        int stages = done;
+        if (CollectCheckpoint.has(stages, CollectCheckpoint.ALL)) {
+            return stages;
+        }
+
+        if (!CollectCheckpoint.has(stages, CollectCheckpoint.MARKET_DATA)) {
+            // Expirations go straight to the chain stage, no read-back from market_data
+            long started = System.nanoTime();
+            Collected collected = processTicker(ticker, proxyManager);
+            if (collected == null) {
+                return stages;
+            }
+            stages |= collected.stages();
+            MarketDataWriter.MarketDataSnapshot snapshot = collected.snapshot();
+            if (BarchartOptionChainCollect.collectOptionChains(snapshot, config, proxyManager)) {
+                CollectCheckpoint.mark(ticker, snapshot.cycleRange(), snapshot.updateDate(), CollectCheckpoint.OPTION_CHAINS);
+                stages |= CollectCheckpoint.OPTION_CHAINS;
+                SymbolScheduler.record(ticker, snapshot.expirations().size(), (System.nanoTime() - started) / 1_000_000);
+                SYMBOL.since(started);
+            }
+            return stages;
+        }
+
+        // market_data is committed: only the chains and / or volatility are left
+        if (!CollectCheckpoint.has(stages, CollectCheckpoint.OPTION_CHAINS)
+                && BarchartOptionChainCollect.collectOptionChains(ticker, cycleRange, cycleDate, config, proxyManager)) {
+            CollectCheckpoint.mark(ticker, cycleRange, cycleDate, CollectCheckpoint.OPTION_CHAINS);
+            stages |= CollectCheckpoint.OPTION_CHAINS;
+        }
+        if (!CollectCheckpoint.has(stages, CollectCheckpoint.VOLATILITY)
+                && processVolatility(ticker, cycleRange, cycleDate, proxyManager)) {
+            stages |= CollectCheckpoint.VOLATILITY;
+        }
+        return stages;
+    }
+
+    // Volatility stage on its own, for a resumed symbol whose market_data is already in; false when every attempt failed
+    private static boolean processVolatility(String ticker, String cycleRange, java.sql.Date updateDate,
+                                          ProxyManager proxyManager) throws InterruptedException {
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            InetSocketAddress proxyUsed = null;
+            try {
+                proxyUsed = proxyManager.getNextProxy();
+                BarchartSessionCache.Session session = BarchartSessionCache.get(proxyUsed, proxyManager);
+                BarchartHtmlFetcher.Volatility volatility = BarchartHtmlFetcher.fetchVolatility(ticker, proxyUsed, session, proxyManager);
+                if (volatility != null) {
+                    java.sql.Time updateTime = java.sql.Time.valueOf(LocalTime.now(CycleHelper.NEW_YORK).withNano(0));
+                    WriteBehindQueue.submit(new VolatilityWriter.VolatilitySnapshot(ticker, cycleRange, updateDate, updateTime,
+                            volatility.historicVolatility(), volatility.ivRank(), volatility.ivPercentile()));
+                    CollectCheckpoint.mark(ticker, cycleRange, updateDate, CollectCheckpoint.VOLATILITY);
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LogUtil.log("Error fetching volatility for " + ticker + " (attempt " + attempt + "): " + e.getMessage());
+                VOLATILITY_RETRIES.inc();
+                if (proxyUsed != null) proxyManager.markProxyBad(proxyUsed);
+            }
+            Thread.sleep(2000L * attempt);
+        }
+        return false;
+    }
+
+    // market_data snapshot handed to the writer and the checkpoint stages it covers
+    private record Collected(MarketDataWriter.MarketDataSnapshot snapshot, int stages) {
+    }
+
+    // Returns what was handed to the writer, null when every attempt failed
+    private static Collected processTicker(String ticker, ProxyManager proxyManager) {
         int maxRetries = 10;
+        BarchartHtmlFetcher.Volatility volatility = null;
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
             InetSocketAddress proxyUsed = null;
             try {
                 proxyUsed = proxyManager.getNextProxy();
-                HttpClient client = HttpHelper.createHttpClientForSymbol(proxyUsed);
-                String ip = getPublicIP(client);
+//                LogUtil.log("Processing " + ticker + " using proxy: " + proxyUsed);
 
-//                LogUtil.log("Processing " + ticker + " using proxy: " + proxyUsed + ", public IP detected: " + ip);
-
-                String pageUrl = "https://www.barchart.com/stocks/quotes/" + ticker + "/put-call-ratios";
-                HttpRequest pageRequest = HttpRequest.newBuilder()
-                        .uri(URI.create(pageUrl))
-                        .GET()
-                        .timeout(java.time.Duration.ofSeconds(30))
-                        .header("user-agent", UserAgentProvider.getRandomUserAgent())
-                        .header("accept-language", "en-US,en;q=0.9")
-                        .header("cache-control", "no-cache")
-                        .header("accept", "text/html")
-                        .build();
+                String pageUrl = BarchartHtmlFetcher.pageUrl(ticker);
+                BarchartSessionCache.Session session = BarchartSessionCache.get(proxyUsed, proxyManager);
 
-                HttpResponse<String> pageResponse = client.send(pageRequest, HttpResponse.BodyHandlers.ofString());
-                List<String> setCookies = pageResponse.headers().allValues("set-cookie");
-                String cookieHeader = setCookies.stream()
-                        .map(c -> c.split(";", 2)[0])
-                        .collect(Collectors.joining("; ")) + "; bcFreeUserPageView=0";
-                String xsrfToken = HttpHelper.extractXsrfFromCookies(setCookies);
+                // The put-call-ratios page is the API referer, read once per symbol for the volatility figures
+                if (volatility == null) {
+                    volatility = BarchartHtmlFetcher.fetchVolatility(ticker, proxyUsed, session, proxyManager);
+                }
 
                 String apiUrl = "https://www.barchart.com/proxies/core-api/v1/options-expirations/get"
                         + "?fields=expirationDate,expirationType,daysToExpiration,putVolume,callVolume,totalVolume,"
@@ -216,111 +484,64 @@ public class BarchartCollect {
                         .GET()
                         .timeout(java.time.Duration.ofSeconds(30))
                         .header("accept", "application/json")
-                        .header("cookie", cookieHeader)
-                        .header("x-xsrf-token", xsrfToken)
+                        .header("user-agent", session.userAgent())
+                        .header("cookie", session.cookieHeader())
+                        .header("x-xsrf-token", session.xsrfToken())
                         .header("referer", pageUrl)
                         .build();
 
-                HttpResponse<String> apiResponse = client.send(apiRequest, HttpResponse.BodyHandlers.ofString());
-
-//                LogUtil.log("API Response for " + ticker + ": " + apiResponse.body());
+                long sent = System.nanoTime();
+                HttpResponse<InputStream> apiResponse = proxyManager.send(proxyUsed, apiRequest, HttpResponse.BodyHandlers.ofInputStream());
+                long received = System.nanoTime();
+                EXPIRATIONS_API.recordNanos(received - sent);
+
+                // The body streams from the socket while it is decoded, so this includes its transfer
+                List<BarchartJsonDecoder.ExpirationQuote> expirations;
+                try (InputStream body = apiResponse.body()) {
+                    expirations = apiResponse.statusCode() == 200
+                            ? BarchartJsonDecoder.decodeExpirations(body, ticker)
+                            : null;
+                }
+                EXPIRATIONS_DECODE.since(received);
 
-                if (apiResponse.statusCode() == 200) {
-                    saveToDatabase(apiResponse.body(), ticker);
-                    break;
+                if (expirations != null) {
+                    return saveToDatabase(expirations, volatility, ticker);
                 } else {
                     LogUtil.log("Failed API for " + ticker + ": " + apiResponse.statusCode());
+                    if (BarchartSessionCache.isRejected(apiResponse.statusCode())) {
+                        BarchartSessionCache.invalidate(proxyUsed);
+                    }
                 }
             } catch (Exception e) {
                 LogUtil.log("Error processing ticker " + ticker + " (attempt " + attempt + "): " + e.getMessage());
                 if (proxyUsed != null) proxyManager.markProxyBad(proxyUsed);
             }
+            EXPIRATIONS_RETRIES.inc();
             try { Thread.sleep(2000 * attempt); } catch (InterruptedException ignored) {}
         }
+        return null;
     }
 
-    private static void saveToDatabase(String jsonResponse, String tickerFromDb) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(jsonResponse);
-        JsonNode dataArray = root.path("data");
-
+    private static Collected saveToDatabase(List<BarchartJsonDecoder.ExpirationQuote> expirations,
+                                                                      BarchartHtmlFetcher.Volatility volatility,
+                                                                      String tickerFromDb) throws Exception {
         ZoneId nyZone = ZoneId.of("America/New_York");
         ZonedDateTime nyNow = ZonedDateTime.now(nyZone);
         java.sql.Date updateDate = java.sql.Date.valueOf(nyNow.toLocalDate());
         java.sql.Time updateTime = java.sql.Time.valueOf(nyNow.toLocalTime().withNano(0));
-        int batchSize = 200;
-        int count = 0;        // Row counter for batch size
-        try (Connection conn = ConnectionPool.getConnection()) {
-            String sql = "INSERT INTO market_data(" +
-                    "symbol, Cycle_Range, expiration_date, expiration_type, update_date, update_time, " +
-                    "DTE, Put_Vol, Call_Vol, Total_Vol, Put_or_Call_Vol, Put_OI, Call_OI, Total_OI, " +
-                    "Put_or_Call_OI, IV, Base_LastPrice, Implied_Move, Implied_Move_Percent, Base_Upper_Price, Base_Lower_Price) " +
-                    "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                    "ON DUPLICATE KEY UPDATE " +
-                    "Cycle_Range=VALUES(Cycle_Range), update_time=VALUES(update_time), expiration_type=VALUES(expiration_type), " +
-                    "DTE=VALUES(DTE), Put_Vol=VALUES(Put_Vol), Call_Vol=VALUES(Call_Vol), Total_Vol=VALUES(Total_Vol), " +
-                    "Put_or_Call_Vol=VALUES(Put_or_Call_Vol), Put_OI=VALUES(Put_OI), Call_OI=VALUES(Call_OI), " +
-                    "Total_OI=VALUES(Total_OI), Put_or_Call_OI=VALUES(Put_or_Call_OI), IV=VALUES(IV), " +
-                    "Base_LastPrice=VALUES(Base_LastPrice), Implied_Move=VALUES(Implied_Move), " +
-                    "Implied_Move_Percent=VALUES(Implied_Move_Percent), Base_Upper_Price=VALUES(Base_Upper_Price), " +
-                    "Base_Lower_Price=VALUES(Base_Lower_Price)";
-
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                DateTimeFormatter inputFmt = DateTimeFormatter.ofPattern("MM/dd/yy");
-                DateTimeFormatter outputFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-                for (JsonNode item : dataArray) {
-                    String expirationDate = item.path("expirationDate").asText();
-                    String expirationType = item.path("expirationType").asText("").toLowerCase();
-
-                    if ("n/a".equals(expirationType) || expirationType.isEmpty()) {
-                        LogUtil.log("Skipping expirationType n/a for symbol: " + tickerFromDb);
-                        continue;
-                    }
-                    String formattedDate = LocalDate.parse(expirationDate, inputFmt).format(outputFmt);
-
-                    stmt.setString(1, tickerFromDb);
-                    stmt.setString(2, CycleHelper.getCycleRange());
-                    stmt.setString(3, formattedDate);       // save raw date
-                    stmt.setString(4, expirationType);      // weekly or monthly
-                    stmt.setDate(5, updateDate);
-                    stmt.setTime(6, updateTime);
-                    stmt.setInt(7, NumberParser.parseIntSafe(item.path("daysToExpiration").asText()));
-                    stmt.setInt(8, NumberParser.parseIntSafe(item.path("putVolume").asText()));
-                    stmt.setInt(9, NumberParser.parseIntSafe(item.path("callVolume").asText()));
-                    stmt.setInt(10, NumberParser.parseIntSafe(item.path("totalVolume").asText()));
-                    stmt.setDouble(11, NumberParser.parseDoubleSafe(item.path("putCallVolumeRatio").asText()));
-                    stmt.setInt(12, NumberParser.parseIntSafe(item.path("putOpenInterest").asText()));
-                    stmt.setInt(13, NumberParser.parseIntSafe(item.path("callOpenInterest").asText()));
-                    stmt.setInt(14, NumberParser.parseIntSafe(item.path("totalOpenInterest").asText()));
-                    stmt.setDouble(15, NumberParser.parseDoubleSafe(item.path("putCallOpenInterestRatio").asText()));
-                    stmt.setDouble(16, NumberParser.parseVolatility(item.path("averageVolatility").asText()));
-                    stmt.setDouble(17, NumberParser.parseDoubleSafe(item.path("baseLastPrice").asText()));
-                    stmt.setDouble(18, NumberParser.parseDoubleSafe(item.path("impliedMove").asText()));
-
-                    // --- FIX: Use raw.impliedMovePercent ---
-                    double impliedMovePercent = 0.0;
-                    JsonNode rawNode = item.path("raw");
-                    if (rawNode != null && rawNode.has("impliedMovePercent")) {
-                        impliedMovePercent = rawNode.path("impliedMovePercent").asDouble();
-                    }
-                    stmt.setDouble(19, impliedMovePercent);
-
-                    stmt.setDouble(20, NumberParser.parseDoubleSafe(item.path("baseUpperPrice").asText()));
-                    stmt.setDouble(21, NumberParser.parseDoubleSafe(item.path("baseLowerPrice").asText()));
 
-                    stmt.addBatch();
-                    count++;
-                    if (count % batchSize == 0) {
-                        stmt.executeBatch(); // Execute batch every `batchSize` rows
-                        count = 0; // Reset the batch counter
-                    }
-                }
-                if (count > 0) {
-                    stmt.executeBatch(); // Execute any remaining rows in the batch
-                }
-            }
+        // Same lane as the symbol's chains and queued ahead of them, so the FK parent rows land first
+        MarketDataWriter.MarketDataSnapshot snapshot = new MarketDataWriter.MarketDataSnapshot(
+                tickerFromDb, CycleHelper.getCycleRange(), updateDate, updateTime, expirations);
+        WriteBehindQueue.submit(snapshot);
+        int stages = CollectCheckpoint.MARKET_DATA;
+        if (volatility != null) {
+            // Scoped to this snapshot's update_date / Cycle_Range, batched with other symbols by the lane
+            WriteBehindQueue.submit(new VolatilityWriter.VolatilitySnapshot(tickerFromDb, snapshot.cycleRange(),
+                    updateDate, updateTime, volatility.historicVolatility(), volatility.ivRank(), volatility.ivPercentile()));
+            stages |= CollectCheckpoint.VOLATILITY;
         }
+        CollectCheckpoint.mark(tickerFromDb, snapshot.cycleRange(), updateDate, stages);
+        return new Collected(snapshot, stages);
     }
 }
@@ -1,44 +1,44 @@
 package apicall;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.*;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
 import java.time.Duration;
-import java.util.List;
-import java.util.stream.Collectors;
 
-import Util.ConnectionPool;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-
-import Util.ConfigLoader;
+import Util.BarchartSessionCache;
+import Util.LogUtil;
+import Util.Metrics;
+import Util.NumberParser;
 import Util.ProxyManager;
-import Util.UserAgentProvider;
 
 public class BarchartHtmlFetcher {
 
-    public static void fetchAndStoreVolatilityData(String symbol, ConfigLoader config, ProxyManager proxyManager) {
-        InetSocketAddress proxyUsed = null;
-        try {
-            // --- Pick proxy (same as processTicker) ---
-            proxyUsed = proxyManager.getNextProxy();
-            HttpClient client = HttpClient.newBuilder()
-                    .proxy(ProxySelector.of(proxyUsed))
-                    .cookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ALL))
-                    .connectTimeout(Duration.ofSeconds(30))
-                    .build();
+    // Historic Volatility / IV Rank / IV Percentile as shown on the put-call-ratios page (percent, % stripped)
+    public record Volatility(double historicVolatility, double ivRank, double ivPercentile) {
+    }
 
-            // --- Fetch page to get cookies ---
-            String pageUrl = "https://www.barchart.com/stocks/quotes/" + symbol + "/put-call-ratios?orderBy=averageVolatility&orderDir=desc";
+    private static final String[] LABELS = {"Historic Volatility:", "IV Rank:", "IV Percentile:"};
+    private static final Metrics.Histogram VOLATILITY_PAGE = Metrics.histogram("stage_seconds", "stage", "volatility_page");
+
+    public static String pageUrl(String symbol) {
+        return "https://www.barchart.com/stocks/quotes/" + symbol + "/put-call-ratios?orderBy=averageVolatility&orderDir=desc";
+    }
+
+    // One GET of the put-call-ratios page on the caller's proxy and session; null when the page is unusable
+    public static Volatility fetchVolatility(String symbol, InetSocketAddress proxy,
+                                             BarchartSessionCache.Session session, ProxyManager proxyManager)
+            throws InterruptedException {
+        try {
             HttpRequest pageRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(pageUrl))
-                    .header("user-agent", UserAgentProvider.getRandomUserAgent())
+                    .uri(URI.create(pageUrl(symbol)))
+                    .header("user-agent", session.userAgent())
+                    .header("cookie", session.cookieHeader())
                     .header("accept-language", "en-US,en;q=0.9")
                     .header("cache-control", "no-cache")
                     .header("accept", "text/html")
@@ -46,69 +46,210 @@ public class BarchartHtmlFetcher {
                     .timeout(Duration.ofSeconds(30))
                     .build();
 
-            HttpResponse<String> pageResponse = client.send(pageRequest, HttpResponse.BodyHandlers.ofString());
-            if (pageResponse.statusCode() != 200) {
-                System.err.println("Failed to fetch page for " + symbol + " Status=" + pageResponse.statusCode());
-                proxyManager.markProxyBad(proxyUsed);
-                return;
+            long start = System.nanoTime();
+            HttpResponse<InputStream> pageResponse = proxyManager.send(proxy, pageRequest, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = pageResponse.body()) {
+                Volatility volatility = null;
+                if (pageResponse.statusCode() != 200) {
+                    LogUtil.log("Failed to fetch put-call-ratios page for " + symbol + " Status=" + pageResponse.statusCode());
+                } else {
+                    volatility = extractVolatility(body);
+                }
+                // Read to EOF even when the values came early: closing a half-read HTTP/1.1 body drops the
+                // connection instead of handing it back to the client's pool
+                body.transferTo(OutputStream.nullOutputStream());
+                return volatility;
+            } finally {
+                VOLATILITY_PAGE.since(start);
             }
+        } catch (IOException e) {
+            LogUtil.log("Error fetching HTML for " + symbol + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-            // --- Build cookie header ---
-            List<String> setCookies = pageResponse.headers().allValues("set-cookie");
-            String cookieHeader = setCookies.stream()
-                    .map(c -> c.split(";", 2)[0])
-                    .collect(Collectors.joining("; "));
+    // Walks the HTML tag by tag as it streams in, matching what "span:contains(label) ~ span strong" did:
+    // a <span> whose text is the label, the <span> right after it, and the first <strong ...> inside that.
+    // Script/style bodies, comments and attribute values (meta tags, embedded JSON) are never read as text.
+    public static Volatility extractVolatility(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        char[] chunk = new char[8192];
+        StringBuilder window = new StringBuilder(2 * chunk.length);
+        VolatilityScan scan = new VolatilityScan();
+        int n;
+        while (!scan.done() && (n = reader.read(chunk)) != -1) {
+            window.append(chunk, 0, n);
+            window.delete(0, scan.feed(window));
+        }
+        return scan.result();
+    }
 
-            // --- Parse volatility info from HTML ---
-            Document doc = Jsoup.parse(pageResponse.body());
-            Element hvElement = doc.select("span:contains(Historic Volatility:) ~ span strong").first();
-            String historicVolatility = hvElement != null ? hvElement.text().replace("%", "") : "0";
+    private static final class VolatilityScan {
+        private static final int IDLE = 0;
+        private static final int OPENED = 1;    // just inside a <span>, its text may be a label
+        private static final int LABEL = 2;     // label text read, waiting for its </span>
+        private static final int SIBLING = 3;   // label span closed, only whitespace allowed before the next <span>
+        private static final int VALUE = 4;     // inside the value span, looking for <strong>
+        private static final int STRONG = 5;    // inside <strong>, its text is the value
+
+        private final double[] values = new double[LABELS.length];
+        private final boolean[] seen = new boolean[LABELS.length];
+        private int found;
+        private int state = IDLE;
+        private int label = -1;
+        private int depth;                      // open spans inside the value span, itself included
+        private String skipUntil;               // end of the comment / script / style being skipped
+
+        boolean done() {
+            return found == LABELS.length;
+        }
+
+        // Consumes every complete token in the window; returns where the unfinished one starts
+        int feed(StringBuilder window) {
+            int pos = 0;
+            int len = window.length();
+            while (pos < len && !done()) {
+                if (skipUntil != null) {
+                    int end = window.indexOf(skipUntil, pos);
+                    if (end < 0) return Math.max(pos, len - skipUntil.length() + 1);
+                    // "-->" is consumed here, "</script" / "</style" is left to be read as a closing tag
+                    pos = skipUntil.equals("-->") ? end + skipUntil.length() : end;
+                    skipUntil = null;
+                    continue;
+                }
+                if (window.charAt(pos) != '<') {
+                    int lt = window.indexOf("<", pos);
+                    if (lt < 0) return state == IDLE || state == VALUE ? len : pos;
+                    text(window, pos, lt);
+                    pos = lt;
+                    continue;
+                }
+                if (len - pos < 4) return pos;
+                if (window.charAt(pos + 1) == '!' && window.charAt(pos + 2) == '-' && window.charAt(pos + 3) == '-') {
+                    skipUntil = "-->";
+                    pos += 4;
+                    continue;
+                }
+                int gt = tagEnd(window, pos, len);
+                if (gt < 0) return pos;
+                tag(window, pos, gt);
+                pos = gt + 1;
+            }
+            return pos;
+        }
 
-            Element ivRankElement = doc.select("span:contains(IV Rank:) ~ span strong").first();
-            String ivRank = ivRankElement != null ? ivRankElement.text().replace("%", "") : "0";
+        Volatility result() {
+            if (found == 0) return null;
+            // A label that never showed up is NULL, not 0
+            for (int i = 0; i < LABELS.length; i++) {
+                if (!seen[i]) values[i] = Double.NaN;
+            }
+            return new Volatility(values[0], values[1], values[2]);
+        }
 
-            Element ivPercentileElement = doc.select("span:contains(IV Percentile:) ~ span strong").first();
-            String ivPercentile = ivPercentileElement != null ? ivPercentileElement.text().replace("%", "") : "0";
+        private void text(StringBuilder window, int start, int end) {
+            while (start < end && window.charAt(start) <= ' ') start++;
+            while (end > start && window.charAt(end - 1) <= ' ') end--;
+            if (start == end) return;
+            switch (state) {
+                case OPENED -> {
+                    label = labelAt(window, start, end);
+                    state = label >= 0 ? LABEL : IDLE;
+                }
+                case STRONG -> record(NumberParser.parseDouble(window, start, end));
+                case LABEL, SIBLING -> state = IDLE;
+                default -> {
+                }
+            }
+        }
 
-            double hvVal = parseDoubleSafe(historicVolatility);
-            double ivRankVal = parseDoubleSafe(ivRank);
-            double ivPercentileVal = parseDoubleSafe(ivPercentile);
+        private void tag(StringBuilder window, int start, int gt) {
+            boolean closing = window.charAt(start + 1) == '/';
+            int nameStart = start + (closing ? 2 : 1);
+            int nameEnd = nameStart;
+            while (nameEnd < gt && Character.isLetterOrDigit(window.charAt(nameEnd))) nameEnd++;
+            if (nameEnd == nameStart) return;   // <!DOCTYPE>, <?xml?>
+            boolean span = named(window, nameStart, nameEnd, "span");
+            if (!closing && window.charAt(gt - 1) != '/') {
+                if (named(window, nameStart, nameEnd, "script")) skipUntil = "</script";
+                else if (named(window, nameStart, nameEnd, "style")) skipUntil = "</style";
+            }
 
-            insertIntoDatabase(symbol, hvVal, ivRankVal, ivPercentileVal);
+            switch (state) {
+                case LABEL -> {
+                    if (closing && span) {
+                        state = SIBLING;
+                        return;
+                    }
+                }
+                case SIBLING -> {
+                    if (!closing && span) {
+                        state = VALUE;
+                        depth = 1;
+                        return;
+                    }
+                }
+                case VALUE -> {
+                    if (span) {
+                        depth += closing ? -1 : 1;
+                        if (depth > 0) return;
+                    } else if (!closing && named(window, nameStart, nameEnd, "strong")) {
+                        state = STRONG;
+                        return;
+                    } else {
+                        return;
+                    }
+                }
+                case STRONG -> {
+                    if (!closing || !named(window, nameStart, nameEnd, "strong")) return;
+                    record(Double.NaN);         // <strong></strong>
+                }
+                default -> {
+                }
+            }
+            // Anything else breaks the label / sibling / value chain; a new <span> may start the next one
+            state = !closing && span ? OPENED : IDLE;
+        }
 
-        } catch (Exception e) {
-            System.err.println("Error fetching HTML for " + symbol + ": " + e.getMessage());
-            if (proxyUsed != null) proxyManager.markProxyBad(proxyUsed);
+        private void record(double value) {
+            if (!seen[label]) {
+                values[label] = value;
+                seen[label] = true;
+                found++;
+            }
+            label = -1;
+            state = IDLE;
         }
-    }
 
-    private static void insertIntoDatabase(String symbol, double hv, double ivRank, double ivPercentile) {
-        String sql = "UPDATE market_data " +
-                "SET Historic_Volatility = ?, IV_Rank = ?, IV_Percentile = ? " +
-                "WHERE symbol = ?";
-
-        try (
-                Connection conn = ConnectionPool.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)
-        ) {
-            stmt.setDouble(1, hv);
-            stmt.setDouble(2, ivRank);
-            stmt.setDouble(3, ivPercentile);
-            stmt.setString(4, symbol);
-            int rows = stmt.executeUpdate();
-            if (rows == 0) {
-                System.out.println("No existing row for symbol '" + symbol + "', consider inserting a new row.");
+        private static int labelAt(StringBuilder window, int start, int end) {
+            for (int i = 0; i < LABELS.length; i++) {
+                if (LABELS[i].length() == end - start && LABELS[i].contentEquals(window.subSequence(start, end))) return i;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return -1;
         }
-    }
 
+        private static boolean named(StringBuilder window, int start, int end, String name) {
+            if (end - start != name.length()) return false;
+            for (int i = 0; i < name.length(); i++) {
+                if ((window.charAt(start + i) | 0x20) != name.charAt(i)) return false;
+            }
+            return true;
+        }
 
-    private static double parseDoubleSafe(String value) {
-        if (value == null) return 0.0;
-        value = value.trim();
-        if (value.isEmpty() || value.equalsIgnoreCase("N/A")) return 0.0;
-        return Double.parseDouble(value);
+        // The '>' closing the tag at start, skipping quoted attribute values; -1 if it has not arrived yet
+        private static int tagEnd(StringBuilder window, int start, int len) {
+            char quote = 0;
+            for (int i = start + 1; i < len; i++) {
+                char c = window.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 }
@@ -0,0 +1,255 @@
+package apicall;
+
+import Util.LogUtil;
+import Util.NumberParser;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams Barchart API responses straight into typed rows, no JsonNode tree and no per-call mapper
+public class BarchartJsonDecoder {
+
+    private static final JsonFactory JSON = new ObjectMapper().getFactory();
+
+    // Missing or non-numeric values, stored as SQL NULL by the writers
+    private static final double NULL = Double.NaN;
+    private static final int NULL_INT = NumberParser.NULL_INT;
+
+    private static final DateTimeFormatter INPUT_DATE = DateTimeFormatter.ofPattern("MM/dd/yy");
+    private static final DateTimeFormatter OUTPUT_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // One Call/Put row of options/get
+    public record OptionQuote(String contractType, double strike, String moneyness,
+                              double bid, double mid, double ask, double last, double theoretical,
+                              double priceChange, String percentChange, int volume, int openInterest,
+                              String openInterestChange, double iv, double delta, double gamma,
+                              double theta, double vega, double rho, double volOiRatio,
+                              double itmProbability, String tradeTime) {
+    }
+
+    // One row of options-expirations/get
+    public record ExpirationQuote(String expirationDate, String expirationType, int daysToExpiration,
+                                  int putVolume, int callVolume, int totalVolume, double putCallVolumeRatio,
+                                  int putOpenInterest, int callOpenInterest, int totalOpenInterest,
+                                  double putCallOpenInterestRatio, double averageVolatility,
+                                  double baseLastPrice, double impliedMove, double impliedMovePercent,
+                                  double baseUpperPrice, double baseLowerPrice) {
+    }
+
+    // {"data": {"Call": [...], "Put": [...]}, ...}
+    public static List<OptionQuote> decodeOptionChain(InputStream in) throws IOException {
+        List<OptionQuote> quotes = new ArrayList<>();
+        int skipped = 0;
+        try (JsonParser p = JSON.createParser(in)) {
+            expect(p.nextToken(), JsonToken.START_OBJECT);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken value = p.nextToken();
+                if (!"data".equals(name) || value != JsonToken.START_OBJECT) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String group = p.currentName();
+                    JsonToken groupValue = p.nextToken();
+                    String contractType = "Call".equals(group) ? "C" : "Put".equals(group) ? "P" : null;
+                    if (contractType == null || groupValue != JsonToken.START_ARRAY) {
+                        p.skipChildren();
+                        continue;
+                    }
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        OptionQuote quote = readOptionQuote(p, contractType);
+                        if (quote == null) {
+                            skipped++;
+                            continue;
+                        }
+                        quotes.add(quote);
+                    }
+                }
+            }
+        }
+        if (skipped > 0) {
+            LogUtil.log("Skipping " + skipped + " option rows without a strike");
+        }
+        return quotes;
+    }
+
+    // {"data": [ {...}, ... ], ...}
+    public static List<ExpirationQuote> decodeExpirations(InputStream in, String symbol) throws IOException {
+        List<ExpirationQuote> expirations = new ArrayList<>();
+        try (JsonParser p = JSON.createParser(in)) {
+            expect(p.nextToken(), JsonToken.START_OBJECT);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken value = p.nextToken();
+                if (!"data".equals(name) || value != JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    ExpirationQuote quote = readExpirationQuote(p);
+                    if (quote == null) {
+                        LogUtil.log("Skipping expirationType n/a for symbol: " + symbol);
+                        continue;
+                    }
+                    expirations.add(quote);
+                }
+            }
+        }
+        return expirations;
+    }
+
+    // Returns null for rows without a strike (part of the option_chain_data key)
+    private static OptionQuote readOptionQuote(JsonParser p, String contractType) throws IOException {
+        // Fields the response leaves out stay NULL
+        double strike = NULL, bid = NULL, mid = NULL, ask = NULL, last = NULL, theoretical = NULL, priceChange = NULL;
+        double iv = NULL, delta = NULL, gamma = NULL, theta = NULL, vega = NULL, rho = NULL, volOiRatio = NULL, itmProbability = NULL;
+        int volume = NULL_INT, openInterest = NULL_INT;
+        String moneyness = "", percentChange = "", openInterestChange = "", tradeTime = "";
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "strikePrice" -> strike = number(p);
+                case "moneyness" -> moneyness = text(p);
+                case "bidPrice" -> bid = number(p);
+                case "midpoint" -> mid = number(p);
+                case "askPrice" -> ask = number(p);
+                case "lastPrice" -> last = number(p);
+                case "theoretical" -> theoretical = number(p);
+                case "priceChange" -> priceChange = number(p);
+                case "percentChange" -> percentChange = text(p);
+                case "volume" -> volume = integer(p);
+                case "openInterest" -> openInterest = integer(p);
+                case "openInterestChange" -> openInterestChange = text(p);
+                case "volatility" -> iv = number(p);
+                case "delta" -> delta = number(p);
+                case "gamma" -> gamma = number(p);
+                case "theta" -> theta = number(p);
+                case "vega" -> vega = number(p);
+                case "rho" -> rho = number(p);
+                case "volumeOpenInterestRatio" -> volOiRatio = number(p);
+                case "tradeTime" -> tradeTime = text(p);
+                case "raw" -> {
+                    if (value != JsonToken.START_OBJECT) break;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String rawField = p.currentName();
+                        p.nextToken();
+                        if ("itmProbability".equals(rawField)) {
+                            itmProbability = number(p);
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (Double.isNaN(strike)) {
+            return null;
+        }
+        return new OptionQuote(contractType, strike, moneyness, bid, mid, ask, last, theoretical,
+                priceChange, percentChange, volume, openInterest, openInterestChange, iv, delta, gamma,
+                theta, vega, rho, volOiRatio, itmProbability, tradeTime);
+    }
+
+    // Returns null for rows without a usable expirationType (n/a or empty)
+    private static ExpirationQuote readExpirationQuote(JsonParser p) throws IOException {
+        String expirationDate = "", expirationType = "";
+        int dte = NULL_INT, putVolume = NULL_INT, callVolume = NULL_INT, totalVolume = NULL_INT;
+        int putOpenInterest = NULL_INT, callOpenInterest = NULL_INT, totalOpenInterest = NULL_INT;
+        double putCallVolumeRatio = NULL, putCallOpenInterestRatio = NULL, averageVolatility = NULL;
+        double baseLastPrice = NULL, impliedMove = NULL, impliedMovePercent = NULL, baseUpperPrice = NULL, baseLowerPrice = NULL;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "expirationDate" -> expirationDate = text(p);
+                case "expirationType" -> expirationType = text(p).toLowerCase();
+                case "daysToExpiration" -> dte = integer(p);
+                case "putVolume" -> putVolume = integer(p);
+                case "callVolume" -> callVolume = integer(p);
+                case "totalVolume" -> totalVolume = integer(p);
+                case "putCallVolumeRatio" -> putCallVolumeRatio = number(p);
+                case "putOpenInterest" -> putOpenInterest = integer(p);
+                case "callOpenInterest" -> callOpenInterest = integer(p);
+                case "totalOpenInterest" -> totalOpenInterest = integer(p);
+                case "putCallOpenInterestRatio" -> putCallOpenInterestRatio = number(p);
+                case "averageVolatility" -> averageVolatility = number(p) / 100.0;
+                case "baseLastPrice" -> baseLastPrice = number(p);
+                case "impliedMove" -> impliedMove = number(p);
+                case "baseUpperPrice" -> baseUpperPrice = number(p);
+                case "baseLowerPrice" -> baseLowerPrice = number(p);
+                case "raw" -> {
+                    if (value != JsonToken.START_OBJECT) break;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String rawField = p.currentName();
+                        p.nextToken();
+                        // --- raw.impliedMovePercent, the formatted one carries a % sign ---
+                        if ("impliedMovePercent".equals(rawField)) {
+                            impliedMovePercent = number(p);
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if ("n/a".equals(expirationType) || expirationType.isEmpty()) {
+            return null;
+        }
+        String formattedDate = LocalDate.parse(expirationDate, INPUT_DATE).format(OUTPUT_DATE);
+        return new ExpirationQuote(formattedDate, expirationType, dte, putVolume, callVolume, totalVolume,
+                putCallVolumeRatio, putOpenInterest, callOpenInterest, totalOpenInterest, putCallOpenInterestRatio,
+                averageVolatility, baseLastPrice, impliedMove, impliedMovePercent, baseUpperPrice, baseLowerPrice);
+    }
+
+    // Scalar as text, JSON null as empty (same as JsonNode.asText on a missing field)
+    private static String text(JsonParser p) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) return "";
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return "";
+        }
+        return p.getText();
+    }
+
+    // Numeric scalar parsed from the parser's own buffer; JSON null, nested values and "N/A" give NaN
+    private static double number(JsonParser p) throws IOException {
+        if (!p.currentToken().isScalarValue()) {
+            p.skipChildren();
+            return NULL;
+        }
+        if (p.currentToken() == JsonToken.VALUE_NULL) return NULL;
+        return NumberParser.parseDouble(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    }
+
+    private static int integer(JsonParser p) throws IOException {
+        if (!p.currentToken().isScalarValue()) {
+            p.skipChildren();
+            return NULL_INT;
+        }
+        if (p.currentToken() == JsonToken.VALUE_NULL) return NULL_INT;
+        return NumberParser.parseInt(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected JSON: expected " + expected + " but got " + actual);
+        }
+    }
+}
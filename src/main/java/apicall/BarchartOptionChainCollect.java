@@ -1,11 +1,9 @@
 package apicall;
 
 import Util.*;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.InputStream;
 import java.net.*;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.*;
@@ -13,34 +11,103 @@ import java.sql.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static Util.ProxyManager.getPublicIP;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BarchartOptionChainCollect {
 
-    public static void collectOptionChains(String symbol, java.sql.Date updateDate,
+    private static final Metrics.Histogram CHAIN_API = Metrics.histogram("stage_seconds", "stage", "chain_api");
+    private static final Metrics.Histogram CHAIN_DECODE = Metrics.histogram("stage_seconds", "stage", "chain_decode");
+    private static final Metrics.Counter CHAIN_RETRIES = Metrics.counter("retries_total", "stage", "chain");
+    // Far enough to never pass, close enough that nanoTime() - deadline cannot overflow (~146 years)
+    private static final long NO_DEADLINE = Long.MAX_VALUE / 2;
+
+    // Expirations of one symbol are fetched concurrently, each on its own virtual thread
+    private static final ExecutorService FAN_OUT =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chain-", 0).factory());
+
+    // Pipeline path: expirations come in memory from the market_data stage of the same cycle.
+    // Returns true when every expiration was fetched and queued, i.e. the chain stage is complete.
+    public static boolean collectOptionChains(MarketDataWriter.MarketDataSnapshot snapshot,
                                            ConfigLoader config, ProxyManager proxyManager) throws Exception {
+        List<ExpirationInfo> expirationList = new ArrayList<>(snapshot.expirations().size());
+        for (BarchartJsonDecoder.ExpirationQuote quote : snapshot.expirations()) {
+            expirationList.add(new ExpirationInfo(quote.expirationDate(), quote.expirationType()));
+        }
+        if (expirationList.isEmpty()) {
+            LogUtil.log("No expiration dates found for " + snapshot.symbol() + " on " + snapshot.updateDate());
+            return true;
+        }
+        return collectOptionChains(snapshot.symbol(), expirationList, snapshot.cycleRange(), snapshot.updateDate(), config, proxyManager);
+    }
+
+    // Standalone path: expirations read back from market_data
+    public static boolean collectOptionChains(String symbol, java.sql.Date updateDate,
+                                              ConfigLoader config, ProxyManager proxyManager) throws Exception {
+        return collectOptionChains(symbol, CycleHelper.getCycleRange(), updateDate, config, proxyManager);
+    }
 
-        List<ExpirationInfo> expirationList = getExpirationsForSymbol(symbol, config, updateDate);
+    // Resume path: market_data of this cycle is already committed, only the chains are left
+    public static boolean collectOptionChains(String symbol, String cycleRange, java.sql.Date updateDate,
+                                              ConfigLoader config, ProxyManager proxyManager) throws Exception {
+
+        List<ExpirationInfo> expirationList = getExpirationsForSymbol(symbol, cycleRange, updateDate);
         if (expirationList.isEmpty()) {
             LogUtil.log("No expiration dates found for " + symbol + " on " + updateDate);
-            return;
+            return false;
         }
+        return collectOptionChains(symbol, expirationList, cycleRange, updateDate, config, proxyManager);
+    }
 
+    private static boolean collectOptionChains(String symbol, List<ExpirationInfo> expirationList, String cycleRange,
+                                            java.sql.Date updateDate, ConfigLoader config,
+                                            ProxyManager proxyManager) throws Exception {
+        // Fan out across the proxy pool: capped per symbol, all expirations share one deadline
+        int parallelism = Integer.parseInt(config.getProperty("chain.parallelism", "4").trim());
+        long deadlineSeconds = Long.parseLong(config.getProperty("chain.deadline.seconds", "300").trim());
+        long deadlineNanos = System.nanoTime() + Math.min(TimeUnit.SECONDS.toNanos(deadlineSeconds), NO_DEADLINE);
+        Semaphore perSymbol = new Semaphore(Math.max(1, parallelism));
+        AtomicInteger saved = new AtomicInteger();
+        String baseSymbol = symbol.toUpperCase().trim();
+
+        List<Callable<Void>> tasks = new ArrayList<>(expirationList.size());
         for (ExpirationInfo expInfo : expirationList) {
-            processOptionChain(symbol.toUpperCase().trim(), expInfo.date.trim(), expInfo.type.trim(), config, proxyManager);
+            tasks.add(() -> {
+                perSymbol.acquire();
+                try {
+                    if (processOptionChain(baseSymbol, expInfo.date.trim(), expInfo.type.trim(), cycleRange, updateDate,
+                            config, proxyManager, deadlineNanos)) {
+                        saved.incrementAndGet();
+                    }
+                } finally {
+                    perSymbol.release();
+                }
+                return null;
+            });
+        }
+
+        List<Future<Void>> futures = FAN_OUT.invokeAll(tasks, deadlineSeconds, TimeUnit.SECONDS);
+        long missed = futures.stream().filter(Future::isCancelled).count();
+        if (missed > 0) {
+            LogUtil.log("⌛ Deadline reached for " + symbol + ": " + missed + "/" + tasks.size() + " expirations not collected");
         }
 //        LogUtil.log("Option chain data fetched and saved for all expirations of " + symbol);
+        return saved.get() == tasks.size();
     }
 
     public static void main(String[] args) throws Exception {
         ConfigLoader config = new ConfigLoader();
+        ConnectionPool.init(config, 1);
         ProxyManager proxyManager = new ProxyManager(config, LogUtil::log);
+        HttpClientRegistry.init(config);
+        BarchartSessionCache.init(config);
+        OptionChainWriter.init(config);
+        ChainFingerprintCache.init(config);
+        WriteBehindQueue.init(config);
 
         if (args.length == 1) {
             String symbol = args[0];
-            java.sql.Date today = new java.sql.Date(System.currentTimeMillis());
+            java.sql.Date today = java.sql.Date.valueOf(LocalDate.now(CycleHelper.NEW_YORK));
             collectOptionChains(symbol, today, config, proxyManager);
 
         } else if (args.length >= 3) {
@@ -49,7 +116,9 @@ public class BarchartOptionChainCollect {
             String expirationType = args[2];
             initLogFile(config);
             LogUtil.log("Processing expiration " + expirationDate + " (" + expirationType + ") for " + symbol);
-            processOptionChain(symbol.toUpperCase().trim(), expirationDate.trim(), expirationType.trim(), config, proxyManager);
+            processOptionChain(symbol.toUpperCase().trim(), expirationDate.trim(), expirationType.trim(),
+                    CycleHelper.getCycleRange(), java.sql.Date.valueOf(LocalDate.now(CycleHelper.NEW_YORK)),
+                    config, proxyManager, System.nanoTime() + NO_DEADLINE);
         } else {
             System.out.println("Usage:");
             System.out.println("  java -cp yourJar.jar apicall.BarchartOptionChainCollect <SYMBOL>");
@@ -57,6 +126,9 @@ public class BarchartOptionChainCollect {
             System.out.println("  java -cp yourJar.jar apicall.BarchartOptionChainCollect <SYMBOL> <EXPIRATION> <TYPE>");
             System.out.println("    -> fetch specific expiration and type");
         }
+
+        WriteBehindQueue.close();
+        ConnectionPool.close();
     }
 
     private static void initLogFile(ConfigLoader config) throws Exception {
@@ -67,35 +139,26 @@ public class BarchartOptionChainCollect {
         }
         String timestamp = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").format(LocalDateTime.now());
         Path logFile = logDirPath.resolve("barchart_option_chain_" + timestamp + ".log");
+        LogUtil.configure(config);
         LogUtil.init(logFile);
     }
 
-    private static void processOptionChain(String symbol, String expirationDate, String expirationType,
-                                           ConfigLoader config, ProxyManager proxyManager) {
+    // True once the chain is queued for writing, false when retries ran out or the deadline passed
+    private static boolean processOptionChain(String symbol, String expirationDate, String expirationType,
+                                           String cycleRange, java.sql.Date updateDate,
+                                           ConfigLoader config, ProxyManager proxyManager, long deadlineNanos) {
         int maxRetries = 5;
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                LogUtil.log("⌛ Giving up on " + symbol + " " + expirationDate + ": symbol deadline passed");
+                return false;
+            }
             InetSocketAddress proxyUsed = null;
             try {
                 proxyUsed = proxyManager.getNextProxy();
-                HttpClient client = HttpHelper.createHttpClientForSymbol(proxyUsed);
 
                 String pageUrl = "https://www.barchart.com/stocks/quotes/" + symbol + "/options?expiration=" + expirationDate + "-" + expirationType.charAt(0);
-                HttpRequest pageRequest = HttpRequest.newBuilder()
-                        .uri(URI.create(pageUrl))
-                        .GET()
-                        .timeout(java.time.Duration.ofSeconds(30))
-                        .header("user-agent", UserAgentProvider.getRandomUserAgent())
-                        .header("accept-language", "en-US,en;q=0.9")
-                        .header("cache-control", "no-cache")
-                        .header("accept", "text/html")
-                        .build();
-
-                HttpResponse<String> pageResponse = client.send(pageRequest, HttpResponse.BodyHandlers.ofString());
-                List<String> setCookies = pageResponse.headers().allValues("set-cookie");
-                String cookieHeader = setCookies.stream()
-                        .map(c -> c.split(";", 2)[0])
-                        .collect(Collectors.joining("; ")) + "; bcFreeUserPageView=0";
-                String xsrfToken = HttpHelper.extractXsrfFromCookies(setCookies);
+                BarchartSessionCache.Session session = BarchartSessionCache.get(proxyUsed, proxyManager);
 
                 // Single Combined API Call
                 String combinedUrl = "https://www.barchart.com/proxies/core-api/v1/options/get"
@@ -116,134 +179,71 @@ public class BarchartOptionChainCollect {
                         .GET()
                         .timeout(java.time.Duration.ofSeconds(30))
                         .header("accept", "application/json")
-                        .header("cookie", cookieHeader)
-                        .header("x-xsrf-token", xsrfToken)
+                        .header("user-agent", session.userAgent())
+                        .header("cookie", session.cookieHeader())
+                        .header("x-xsrf-token", session.xsrfToken())
                         .header("referer", pageUrl)
                         .build();
 
-                HttpResponse<String> combinedResponse = client.send(combinedRequest, HttpResponse.BodyHandlers.ofString());
+                long sent = System.nanoTime();
+                HttpResponse<InputStream> combinedResponse = proxyManager.send(proxyUsed, combinedRequest, HttpResponse.BodyHandlers.ofInputStream());
+                long received = System.nanoTime();
+                CHAIN_API.recordNanos(received - sent);
 
-                if (combinedResponse.statusCode() == 200) {
-                    saveOptionChain(combinedResponse.body(), symbol, expirationDate, expirationType);
-                    break;
+                List<BarchartJsonDecoder.OptionQuote> quotes;
+                try (InputStream body = combinedResponse.body()) {
+                    quotes = combinedResponse.statusCode() == 200
+                            ? BarchartJsonDecoder.decodeOptionChain(body)
+                            : null;
+                }
+                CHAIN_DECODE.since(received);
+
+                if (quotes != null) {
+                    saveOptionChain(quotes, symbol, expirationDate, expirationType, cycleRange, updateDate);
+                    return true;
                 } else {
                     LogUtil.log("Error response for " + symbol + ": status=" + combinedResponse.statusCode());
+                    if (BarchartSessionCache.isRejected(combinedResponse.statusCode())) {
+                        BarchartSessionCache.invalidate(proxyUsed);
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();   // cancelled at the symbol deadline
+                return false;
             } catch (Exception e) {
                 LogUtil.log("Error fetching option chain " + symbol + " (attempt " + attempt + "): " + e.getMessage());
                 if (proxyUsed != null) proxyManager.markProxyBad(proxyUsed);
             }
-            try { Thread.sleep(2000 * attempt); } catch (InterruptedException ignored) {}
-        }
-    }
-
-    private static void saveOptionChain(String json, String baseSymbol,
-                                        String expirationDate, String expirationType) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(json).path("data");
-
-        ZoneId nyZone = ZoneId.of("America/New_York");
-        ZonedDateTime nyNow = ZonedDateTime.now(nyZone);
-        java.sql.Date updateDate = java.sql.Date.valueOf(nyNow.toLocalDate());
-        java.sql.Time updateTime = java.sql.Time.valueOf(nyNow.toLocalTime().withNano(0));
-
-        int batchSize = 100;  // Reduced batch size
-        int count = 0; // Row counter for batch size
-        try (Connection conn = ConnectionPool.getConnection()) {
-            conn.setAutoCommit(false);  // Disable auto-commit
-
-            String sql = "INSERT INTO option_chain_data(" +
-                    "symbol, Cycle_Range, expiration_date, expiration_type, update_date, update_time, " +
-                    "contract_type, strike, moneyness, bid, mid, ask, last, theoretical, " +
-                    "change_val, pct_chg, volume, open_interest, oi_change, iv, delta, gamma, " +
-                    "theta, vega, rho, vol_oi_ratio, itm_probability, time_quoted) " +
-                    "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" +
-                    "ON DUPLICATE KEY UPDATE " +
-                    "moneyness=VALUES(moneyness), bid=VALUES(bid), mid=VALUES(mid), ask=VALUES(ask), " +
-                    "last=VALUES(last), theoretical=VALUES(theoretical), change_val=VALUES(change_val), " +
-                    "pct_chg=VALUES(pct_chg), volume=VALUES(volume), open_interest=VALUES(open_interest), " +
-                    "oi_change=VALUES(oi_change), iv=VALUES(iv), delta=VALUES(delta), gamma=VALUES(gamma), " +
-                    "theta=VALUES(theta), vega=VALUES(vega), rho=VALUES(rho), vol_oi_ratio=VALUES(vol_oi_ratio), " +
-                    "itm_probability=VALUES(itm_probability), time_quoted=VALUES(time_quoted)";
-
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                for (String type : List.of("Call", "Put")) {
-                    if (root.has(type)) {
-                        for (JsonNode node : root.get(type)) {
-                            String contractType = type.equals("Call") ? "C" : "P";
-                            addOptionRecord(stmt, node, baseSymbol, expirationDate, expirationType, updateDate, updateTime, contractType);
-                        }
-                    }
-                }
-
-                stmt.addBatch(); // Add the option record to the batch
-                count++;
-                if (count % batchSize == 0) {
-                    stmt.executeBatch(); // Execute the batch
-                    conn.commit();       // Commit the transaction
-                    stmt.clearBatch();   // Clear the batch after execution
-                    count = 0;           // Reset counter after batch commit
-                }
-
-                if (count > 0) {
-                    stmt.executeBatch(); // Execute any remaining rows in the batch
-                    conn.commit();       // Commit the transaction
-                    stmt.clearBatch();   // Clear the batch
-                }
+            CHAIN_RETRIES.inc();
+            try {
+                Thread.sleep(2000 * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
+        return false;
     }
 
+    // Cycle range and update date are the parent market_data row's, so the FK matches even across midnight
+    private static void saveOptionChain(List<BarchartJsonDecoder.OptionQuote> quotes, String baseSymbol,
+                                        String expirationDate, String expirationType,
+                                        String cycleRange, java.sql.Date updateDate) throws InterruptedException {
+        java.sql.Time updateTime = java.sql.Time.valueOf(LocalTime.now(CycleHelper.NEW_YORK).withNano(0));
 
-    private static void addOptionRecord(PreparedStatement stmt, JsonNode node,
-                                        String baseSymbol, String expirationDate, String expirationType,
-                                        java.sql.Date updateDate, java.sql.Time updateTime,
-                                        String contractType) throws SQLException {
-        stmt.setString(1, baseSymbol);
-        stmt.setString(2, CycleHelper.getCycleRange());
-        stmt.setString(3, expirationDate);
-        stmt.setString(4, expirationType);
-        stmt.setDate(5, updateDate);
-        stmt.setTime(6, updateTime);
-        stmt.setString(7, contractType);
-
-        stmt.setDouble(8,  NumberParser.parseDoubleSafe(node.path("strikePrice").asText()));
-        stmt.setString(9,  node.path("moneyness").asText());
-        stmt.setDouble(10, NumberParser.parseDoubleSafe(node.path("bidPrice").asText()));
-        stmt.setDouble(11, NumberParser.parseDoubleSafe(node.path("midpoint").asText()));
-        stmt.setDouble(12, NumberParser.parseDoubleSafe(node.path("askPrice").asText()));
-        stmt.setDouble(13, NumberParser.parseDoubleSafe(node.path("lastPrice").asText()));
-        stmt.setDouble(14, NumberParser.parseDoubleSafe(node.path("theoretical").asText()));
-        stmt.setDouble(15, NumberParser.parseDoubleSafe(node.path("priceChange").asText()));
-        stmt.setString(16, node.path("percentChange").asText());
-        stmt.setInt(17, NumberParser.parseIntSafe(node.path("volume").asText()));
-        stmt.setInt(18, NumberParser.parseIntSafe(node.path("openInterest").asText()));
-        stmt.setString(19, node.path("openInterestChange").asText());
-        stmt.setDouble(20, NumberParser.parseDoubleSafe(node.path("volatility").asText().replace("%", "")));
-        stmt.setDouble(21, NumberParser.parseDoubleSafe(node.path("delta").asText()));
-        stmt.setDouble(22, NumberParser.parseDoubleSafe(node.path("gamma").asText()));
-        stmt.setDouble(23, NumberParser.parseDoubleSafe(node.path("theta").asText()));
-        stmt.setDouble(24, NumberParser.parseDoubleSafe(node.path("vega").asText()));
-        stmt.setDouble(25, NumberParser.parseDoubleSafe(node.path("rho").asText()));
-        stmt.setDouble(26, NumberParser.parseDoubleSafe(node.path("volumeOpenInterestRatio").asText()));
-
-        double itmProbability = 0.0;
-        if (node.has("raw") && node.path("raw").has("itmProbability")) {
-            itmProbability = node.path("raw").path("itmProbability").asDouble();
-        }
-        stmt.setDouble(27, itmProbability);
-        stmt.setString(28, node.path("tradeTime").asText());
-
-        stmt.addBatch();
+        WriteBehindQueue.submit(new OptionChainWriter.ChainSnapshot(baseSymbol, cycleRange,
+                expirationDate, expirationType, updateDate, updateTime, quotes));
     }
 
-    private static List<ExpirationInfo> getExpirationsForSymbol(String symbol, ConfigLoader config, java.sql.Date updateDate) throws SQLException {
+    // Only the parent rows of this cycle, the chain FK points at them
+    private static List<ExpirationInfo> getExpirationsForSymbol(String symbol, String cycleRange, java.sql.Date updateDate) throws SQLException {
         List<ExpirationInfo> list = new ArrayList<>();
-        String sql = "SELECT DISTINCT expiration_date, expiration_type FROM market_data WHERE symbol = ? AND update_date = ?";
+        String sql = "SELECT expiration_date, expiration_type FROM market_data WHERE symbol = ? AND Cycle_Range = ? AND update_date = ?";
         try ( Connection conn = ConnectionPool.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, symbol);
-            stmt.setDate(2, updateDate);
+            stmt.setString(2, cycleRange);
+            stmt.setDate(3, updateDate);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     list.add(new ExpirationInfo(rs.getString(1), rs.getString(2)));
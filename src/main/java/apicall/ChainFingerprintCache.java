@@ -0,0 +1,217 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Last written fingerprint per contract (symbol / expiration / type / strike / C-P), all primitive longs.
+// A row is dropped before JDBC only when its primary key and every value equal what was last committed;
+// rows whose values merely match the previous cycle are new primary keys and still written, just counted.
+public class ChainFingerprintCache {
+
+    // Fingerprints of one lane batch, remembered only after its transaction commits
+    public static final class Pending {
+        private long[] keys = new long[1024];
+        private long[] full = new long[1024];
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        private void add(long key, long fullHash, long valueHash) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                full = Arrays.copyOf(full, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            full[size] = fullHash;
+            values[size] = valueHash;
+            size++;
+        }
+    }
+
+    private static final int SEGMENTS = 64;
+
+    private static final int MISS = 0;
+    private static final int IDENTICAL = 1;      // same primary key, same values: the upsert would be a no-op
+    private static final int SAME_VALUES = 2;    // new cycle / day, values as last written
+
+    private static boolean enabled = true;
+    private static Segment[] segments = new Segment[0];
+
+    private static final AtomicLong rowsSeen = new AtomicLong();
+    private static final AtomicLong rowsSuppressed = new AtomicLong();
+    private static final AtomicLong rowsUnchangedAcrossCycles = new AtomicLong();
+
+    public static synchronized void init(ConfigLoader config) {
+        if (segments.length > 0) return;
+        enabled = Boolean.parseBoolean(config.getProperty("fingerprint.enabled", "true").trim());
+        long maxEntries = Long.parseLong(config.getProperty("fingerprint.maxEntries", "1000000").trim());
+        int perSegment = (int) Math.max(1024, maxEntries / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        LogUtil.log("🧬 Fingerprint cache: " + (enabled ? "up to " + maxEntries + " contracts" : "disabled"));
+    }
+
+    // Chains with already-written rows removed; fingerprints of the kept rows go into pending
+    public static List<OptionChainWriter.ChainSnapshot> filter(List<OptionChainWriter.ChainSnapshot> chains, Pending pending) {
+        if (!enabled || segments.length == 0) return chains;
+        List<OptionChainWriter.ChainSnapshot> kept = new ArrayList<>(chains.size());
+        for (OptionChainWriter.ChainSnapshot chain : chains) {
+            long contractBase = hash(hash(hash(SEED, chain.symbol()), chain.expirationDate()), chain.expirationType());
+            long snapshotBase = hash(hash(SEED, chain.cycleRange()), chain.updateDate().toLocalDate().toEpochDay());
+
+            List<BarchartJsonDecoder.OptionQuote> quotes = new ArrayList<>(chain.quotes().size());
+            for (BarchartJsonDecoder.OptionQuote q : chain.quotes()) {
+                long key = hash(hash(contractBase, Double.doubleToLongBits(q.strike())), q.contractType());
+                long valueHash = valueHash(q);
+                long fullHash = mix(snapshotBase ^ valueHash);
+                rowsSeen.incrementAndGet();
+
+                int match = segments[(int) (key >>> 58)].match(key, fullHash, valueHash);
+                if (match == IDENTICAL) {
+                    rowsSuppressed.incrementAndGet();
+                    continue;
+                }
+                if (match == SAME_VALUES) {
+                    rowsUnchangedAcrossCycles.incrementAndGet();
+                }
+                quotes.add(q);
+                pending.add(key, fullHash, valueHash);
+            }
+            if (quotes.isEmpty()) continue;
+            kept.add(quotes.size() == chain.quotes().size() ? chain
+                    : new OptionChainWriter.ChainSnapshot(chain.symbol(), chain.cycleRange(), chain.expirationDate(),
+                    chain.expirationType(), chain.updateDate(), chain.updateTime(), quotes));
+        }
+        return kept;
+    }
+
+    public static void commit(Pending pending) {
+        for (int i = 0; i < pending.size; i++) {
+            long key = pending.keys[i];
+            segments[(int) (key >>> 58)].put(key, pending.full[i], pending.values[i]);
+        }
+    }
+
+    public static String stats() {
+        long seen = rowsSeen.get();
+        return String.format("fingerprint rows=%d, suppressed=%d (%.1f%%), unchanged since last cycle=%d (%.1f%%)",
+                seen, rowsSuppressed.get(), percent(rowsSuppressed.get(), seen),
+                rowsUnchangedAcrossCycles.get(), percent(rowsUnchangedAcrossCycles.get(), seen));
+    }
+
+    // Everything except update_time (and the key columns), the set ON DUPLICATE KEY UPDATE would rewrite
+    private static long valueHash(BarchartJsonDecoder.OptionQuote q) {
+        long h = hash(SEED, q.moneyness());
+        h = hash(h, Double.doubleToLongBits(q.bid()));
+        h = hash(h, Double.doubleToLongBits(q.mid()));
+        h = hash(h, Double.doubleToLongBits(q.ask()));
+        h = hash(h, Double.doubleToLongBits(q.last()));
+        h = hash(h, Double.doubleToLongBits(q.theoretical()));
+        h = hash(h, Double.doubleToLongBits(q.priceChange()));
+        h = hash(h, q.percentChange());
+        h = hash(h, q.volume());
+        h = hash(h, q.openInterest());
+        h = hash(h, q.openInterestChange());
+        h = hash(h, Double.doubleToLongBits(q.iv()));
+        h = hash(h, Double.doubleToLongBits(q.delta()));
+        h = hash(h, Double.doubleToLongBits(q.gamma()));
+        h = hash(h, Double.doubleToLongBits(q.theta()));
+        h = hash(h, Double.doubleToLongBits(q.vega()));
+        h = hash(h, Double.doubleToLongBits(q.rho()));
+        h = hash(h, Double.doubleToLongBits(q.volOiRatio()));
+        h = hash(h, Double.doubleToLongBits(q.itmProbability()));
+        return hash(h, q.tradeTime());
+    }
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private static long hash(long h, long v) {
+        return mix(h ^ mix(v)) * 0xBF58476D1CE4E5B9L;
+    }
+
+    private static long hash(long h, String s) {
+        if (s == null) return hash(h, -1L);
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return hash(h, s.length());
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0.0 : 100.0 * part / total;
+    }
+
+    // Open addressing, linear probing; cleared when it fills up so memory stays bounded
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int maxEntries;
+        private long[] keys;
+        private long[] full;
+        private long[] values;
+        private int size = 0;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            int capacity = Integer.highestOneBit(Math.max(16, maxEntries) * 2 - 1) << 1;
+            keys = new long[capacity];
+            full = new long[capacity];
+            values = new long[capacity];
+        }
+
+        int match(long key, long fullHash, long valueHash) {
+            long k = key == 0 ? 1 : key;          // 0 marks an empty slot
+            lock.lock();
+            try {
+                int mask = keys.length - 1;
+                for (int i = (int) k & mask; keys[i] != 0; i = (i + 1) & mask) {
+                    if (keys[i] != k) continue;
+                    if (full[i] == fullHash) return IDENTICAL;
+                    return values[i] == valueHash ? SAME_VALUES : MISS;
+                }
+                return MISS;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(long key, long fullHash, long valueHash) {
+            long k = key == 0 ? 1 : key;
+            lock.lock();
+            try {
+                int mask = keys.length - 1;
+                int i = (int) k & mask;
+                while (keys[i] != 0 && keys[i] != k) {
+                    i = (i + 1) & mask;
+                }
+                if (keys[i] == 0) {
+                    if (size >= maxEntries) {
+                        Arrays.fill(keys, 0);
+                        size = 0;
+                        i = (int) k & mask;
+                    }
+                    size++;
+                }
+                keys[i] = k;
+                full[i] = fullHash;
+                values[i] = valueHash;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package apicall;
+
+import Util.ConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per (update_date, Cycle_Range, symbol) bitmask of the stages already committed, so a restarted run
+// only does what is left. Marks travel through the write-behind lane behind the rows they cover,
+// which means a stage bit is never committed before its data.
+public class CollectCheckpoint {
+
+    public static final int MARKET_DATA = 1;
+    public static final int OPTION_CHAINS = 2;
+    public static final int VOLATILITY = 4;
+    public static final int ALL = MARKET_DATA | OPTION_CHAINS | VOLATILITY;
+
+    public record Mark(String symbol, String cycleRange, java.sql.Date updateDate, int stages)
+            implements WriteBehindQueue.WriteTask {
+        @Override
+        public int rowCount() {
+            return 1;
+        }
+    }
+
+    private static final String SQL = "INSERT INTO collect_checkpoint(update_date, Cycle_Range, symbol, stage_mask) " +
+            "VALUES(?, ?, ?, ?) ON DUPLICATE KEY UPDATE stage_mask = stage_mask | VALUES(stage_mask)";
+
+    public static void mark(String symbol, String cycleRange, java.sql.Date updateDate, int stages) throws InterruptedException {
+        WriteBehindQueue.submit(new Mark(symbol, cycleRange, updateDate, stages));
+    }
+
+    public static boolean has(int mask, int stage) {
+        return (mask & stage) == stage;
+    }
+
+    // symbol -> committed stages for one cycle, a single primary-key range read
+    public static Map<String, Integer> load(java.sql.Date updateDate, String cycleRange) throws SQLException {
+        Map<String, Integer> masks = new HashMap<>();
+        String sql = "SELECT symbol, stage_mask FROM collect_checkpoint WHERE update_date = ? AND Cycle_Range = ?";
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDate(1, updateDate);
+            stmt.setString(2, cycleRange);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    masks.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return masks;
+    }
+
+    // Inside the lane transaction, after the data tasks of the same batch
+    public static void write(Connection conn, List<Mark> marks) throws SQLException {
+        if (marks.isEmpty()) return;
+        try (PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            for (Mark mark : marks) {
+                stmt.setDate(1, mark.updateDate());
+                stmt.setString(2, mark.cycleRange());
+                stmt.setString(3, mark.symbol());
+                stmt.setInt(4, mark.stages());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+}
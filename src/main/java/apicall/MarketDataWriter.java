@@ -0,0 +1,151 @@
+package apicall;
+
+import Util.NumberParser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+// market_data upserts, written by the write-behind lanes inside their transaction
+public class MarketDataWriter {
+
+    // All expirations of one symbol from options-expirations/get
+    public record MarketDataSnapshot(String symbol, String cycleRange, java.sql.Date updateDate, java.sql.Time updateTime,
+                                     List<BarchartJsonDecoder.ExpirationQuote> expirations)
+            implements WriteBehindQueue.WriteTask {
+        @Override
+        public int rowCount() {
+            return expirations.size();
+        }
+    }
+
+    private static final String SQL = "INSERT INTO market_data(" +
+            "symbol, Cycle_Range, expiration_date, expiration_type, update_date, update_time, " +
+            "DTE, Put_Vol, Call_Vol, Total_Vol, Put_or_Call_Vol, Put_OI, Call_OI, Total_OI, " +
+            "Put_or_Call_OI, IV, Base_LastPrice, Implied_Move, Implied_Move_Percent, Base_Upper_Price, Base_Lower_Price) " +
+            "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "Cycle_Range=VALUES(Cycle_Range), update_time=VALUES(update_time), expiration_type=VALUES(expiration_type), " +
+            "DTE=VALUES(DTE), Put_Vol=VALUES(Put_Vol), Call_Vol=VALUES(Call_Vol), Total_Vol=VALUES(Total_Vol), " +
+            "Put_or_Call_Vol=VALUES(Put_or_Call_Vol), Put_OI=VALUES(Put_OI), Call_OI=VALUES(Call_OI), " +
+            "Total_OI=VALUES(Total_OI), Put_or_Call_OI=VALUES(Put_or_Call_OI), IV=VALUES(IV), " +
+            "Base_LastPrice=VALUES(Base_LastPrice), Implied_Move=VALUES(Implied_Move), " +
+            "Implied_Move_Percent=VALUES(Implied_Move_Percent), Base_Upper_Price=VALUES(Base_Upper_Price), " +
+            "Base_Lower_Price=VALUES(Base_Lower_Price)";
+
+    // Latest snapshot per (symbol, Cycle_Range); an older snapshot (spool replay) never overwrites a newer one.
+    // update_date is assigned last: MySQL evaluates the assignments left to right.
+    private static final String SUMMARY_SQL = "INSERT INTO market_data_symbol_summary(" +
+            "symbol, Cycle_Range, update_date, update_time, put_vol_total, call_vol_total, put_call_vol_ratio, " +
+            "put_open_interest_total, call_open_interest_total, put_call_open_interest_ratio, IV) " +
+            "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "put_vol_total=IF(VALUES(update_date) >= update_date, VALUES(put_vol_total), put_vol_total), " +
+            "call_vol_total=IF(VALUES(update_date) >= update_date, VALUES(call_vol_total), call_vol_total), " +
+            "put_call_vol_ratio=IF(VALUES(update_date) >= update_date, VALUES(put_call_vol_ratio), put_call_vol_ratio), " +
+            "put_open_interest_total=IF(VALUES(update_date) >= update_date, VALUES(put_open_interest_total), put_open_interest_total), " +
+            "call_open_interest_total=IF(VALUES(update_date) >= update_date, VALUES(call_open_interest_total), call_open_interest_total), " +
+            "put_call_open_interest_ratio=IF(VALUES(update_date) >= update_date, VALUES(put_call_open_interest_ratio), put_call_open_interest_ratio), " +
+            "IV=IF(VALUES(update_date) >= update_date, VALUES(IV), IV), " +
+            "Historic_Volatility=IF(VALUES(update_date) > update_date, NULL, Historic_Volatility), " +
+            "IV_Rank=IF(VALUES(update_date) > update_date, NULL, IV_Rank), " +
+            "IV_Percentile=IF(VALUES(update_date) > update_date, NULL, IV_Percentile), " +
+            "update_time=IF(VALUES(update_date) >= update_date, VALUES(update_time), update_time), " +
+            "update_date=GREATEST(update_date, VALUES(update_date))";
+
+    // Write the snapshots inside the caller's transaction
+    public static void write(Connection conn, List<MarketDataSnapshot> snapshots) throws SQLException {
+        if (snapshots.isEmpty()) return;
+        writeRows(conn, snapshots);
+        writeSummaries(conn, snapshots);
+    }
+
+    private static void writeRows(Connection conn, List<MarketDataSnapshot> snapshots) throws SQLException {
+        int batchSize = 200;
+        int count = 0;        // Row counter for batch size
+        try (PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            for (MarketDataSnapshot snapshot : snapshots) {
+                for (BarchartJsonDecoder.ExpirationQuote item : snapshot.expirations()) {
+                    stmt.setString(1, snapshot.symbol());
+                    stmt.setString(2, snapshot.cycleRange());
+                    stmt.setString(3, item.expirationDate());
+                    stmt.setString(4, item.expirationType());      // weekly or monthly
+                    stmt.setDate(5, snapshot.updateDate());
+                    stmt.setTime(6, snapshot.updateTime());
+                    SqlNulls.setInt(stmt, 7, item.daysToExpiration());
+                    SqlNulls.setInt(stmt, 8, item.putVolume());
+                    SqlNulls.setInt(stmt, 9, item.callVolume());
+                    SqlNulls.setInt(stmt, 10, item.totalVolume());
+                    SqlNulls.setDouble(stmt, 11, item.putCallVolumeRatio());
+                    SqlNulls.setInt(stmt, 12, item.putOpenInterest());
+                    SqlNulls.setInt(stmt, 13, item.callOpenInterest());
+                    SqlNulls.setInt(stmt, 14, item.totalOpenInterest());
+                    SqlNulls.setDouble(stmt, 15, item.putCallOpenInterestRatio());
+                    SqlNulls.setDouble(stmt, 16, item.averageVolatility());
+                    SqlNulls.setDouble(stmt, 17, item.baseLastPrice());
+                    SqlNulls.setDouble(stmt, 18, item.impliedMove());
+                    SqlNulls.setDouble(stmt, 19, item.impliedMovePercent());
+                    SqlNulls.setDouble(stmt, 20, item.baseUpperPrice());
+                    SqlNulls.setDouble(stmt, 21, item.baseLowerPrice());
+
+                    stmt.addBatch();
+                    count++;
+                    if (count % batchSize == 0) {
+                        stmt.executeBatch(); // Execute batch every `batchSize` rows
+                        count = 0; // Reset the batch counter
+                    }
+                }
+            }
+            if (count > 0) {
+                stmt.executeBatch(); // Execute any remaining rows in the batch
+            }
+        }
+    }
+
+    // Same aggregates the old market_data_symbol_summary view computed, from the rows already in memory
+    private static void writeSummaries(Connection conn, List<MarketDataSnapshot> snapshots) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SUMMARY_SQL)) {
+            for (MarketDataSnapshot snapshot : snapshots) {
+                long putVol = 0, callVol = 0, putOi = 0, callOi = 0;
+                double maxIv = Double.NaN;
+                // SUM / MAX skip NULLs, so do the sentinels
+                for (BarchartJsonDecoder.ExpirationQuote item : snapshot.expirations()) {
+                    putVol += orZero(item.putVolume());
+                    callVol += orZero(item.callVolume());
+                    putOi += orZero(item.putOpenInterest());
+                    callOi += orZero(item.callOpenInterest());
+                    if (!Double.isNaN(item.averageVolatility())) {
+                        maxIv = Double.isNaN(maxIv) ? item.averageVolatility() : Math.max(maxIv, item.averageVolatility());
+                    }
+                }
+                stmt.setString(1, snapshot.symbol());
+                stmt.setString(2, snapshot.cycleRange());
+                stmt.setDate(3, snapshot.updateDate());
+                stmt.setTime(4, snapshot.updateTime());
+                stmt.setLong(5, putVol);
+                stmt.setLong(6, callVol);
+                setRatio(stmt, 7, putVol, callVol);
+                stmt.setLong(8, putOi);
+                stmt.setLong(9, callOi);
+                setRatio(stmt, 10, putOi, callOi);
+                SqlNulls.setDouble(stmt, 11, maxIv);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static int orZero(int value) {
+        return value == NumberParser.NULL_INT ? 0 : value;
+    }
+
+    private static void setRatio(PreparedStatement stmt, int index, long numerator, long denominator) throws SQLException {
+        if (denominator == 0) {
+            stmt.setNull(index, Types.DECIMAL);
+        } else {
+            stmt.setDouble(index, Math.round(10_000.0 * numerator / denominator) / 10_000.0);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.LogUtil;
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Bulk ingest for option_chain_data: the write-behind lanes hand over rows from many expirations, written as
+// sized multi-row upserts, or streamed with LOAD DATA LOCAL INFILE into a staging table and merged
+public class OptionChainWriter {
+
+    // All rows of one fetched expiration
+    public record ChainSnapshot(String symbol, String cycleRange, String expirationDate, String expirationType,
+                                java.sql.Date updateDate, java.sql.Time updateTime,
+                                List<BarchartJsonDecoder.OptionQuote> quotes) implements WriteBehindQueue.WriteTask {
+        @Override
+        public int rowCount() {
+            return quotes.size();
+        }
+    }
+
+    private static final String COLUMNS = "symbol, Cycle_Range, expiration_date, expiration_type, update_date, update_time, " +
+            "contract_type, strike, moneyness, bid, mid, ask, last, theoretical, " +
+            "change_val, pct_chg, volume, open_interest, oi_change, iv, delta, gamma, " +
+            "theta, vega, rho, vol_oi_ratio, itm_probability, time_quoted";
+    private static final int COLUMN_COUNT = 28;
+
+    private static final String ON_DUPLICATE = " ON DUPLICATE KEY UPDATE " +
+            "moneyness=VALUES(moneyness), bid=VALUES(bid), mid=VALUES(mid), ask=VALUES(ask), " +
+            "last=VALUES(last), theoretical=VALUES(theoretical), change_val=VALUES(change_val), " +
+            "pct_chg=VALUES(pct_chg), volume=VALUES(volume), open_interest=VALUES(open_interest), " +
+            "oi_change=VALUES(oi_change), iv=VALUES(iv), delta=VALUES(delta), gamma=VALUES(gamma), " +
+            "theta=VALUES(theta), vega=VALUES(vega), rho=VALUES(rho), vol_oi_ratio=VALUES(vol_oi_ratio), " +
+            "itm_probability=VALUES(itm_probability), time_quoted=VALUES(time_quoted)";
+
+    private static boolean loadDataMode = false;
+    private static int rowsPerStatement = 500;
+    private static String fullUpsertSql = upsertSql(rowsPerStatement);
+
+    public static void init(ConfigLoader config) {
+        loadDataMode = "loaddata".equalsIgnoreCase(config.getProperty("ingest.mode", "multirow").trim());
+        rowsPerStatement = Integer.parseInt(config.getProperty("ingest.rowsPerStatement", "500").trim());
+        fullUpsertSql = upsertSql(rowsPerStatement);
+        LogUtil.log("📦 Option chain ingest: mode=" + (loadDataMode ? "loaddata" : "multirow")
+                + ", " + rowsPerStatement + " rows per statement");
+    }
+
+    // Write the chains inside the caller's transaction
+    public static void write(Connection conn, List<ChainSnapshot> chains) throws SQLException {
+        if (chains.isEmpty()) return;
+        if (loadDataMode) {
+            loadData(conn, chains);
+        } else {
+            multiRowUpsert(conn, chains);
+        }
+    }
+
+    // ---- multi-row INSERT ... VALUES (...),(...) ON DUPLICATE KEY UPDATE ----
+
+    private static void multiRowUpsert(Connection conn, List<ChainSnapshot> chains) throws SQLException {
+        try (PreparedStatement full = conn.prepareStatement(fullUpsertSql)) {
+            int rowInStatement = 0;
+            PreparedStatement current = full;
+            int remaining = chains.stream().mapToInt(c -> c.quotes().size()).sum();
+            PreparedStatement tail = null;
+            try {
+                for (ChainSnapshot chain : chains) {
+                    for (BarchartJsonDecoder.OptionQuote quote : chain.quotes()) {
+                        if (rowInStatement == 0 && remaining < rowsPerStatement) {
+                            // Last partial chunk gets its own statement sized to what is left
+                            tail = conn.prepareStatement(upsertSql(remaining));
+                            current = tail;
+                        }
+                        bindRow(current, rowInStatement * COLUMN_COUNT, chain, quote);
+                        rowInStatement++;
+                        remaining--;
+                        if (current == full && rowInStatement == rowsPerStatement) {
+                            full.executeUpdate();
+                            rowInStatement = 0;
+                        }
+                    }
+                }
+                if (tail != null && rowInStatement > 0) {
+                    tail.executeUpdate();
+                }
+            } finally {
+                if (tail != null) tail.close();
+            }
+        }
+    }
+
+    private static String upsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(COLUMNS.length() + rows * (COLUMN_COUNT * 3 + 4) + ON_DUPLICATE.length() + 64);
+        sql.append("INSERT INTO option_chain_data(").append(COLUMNS).append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sql.append(',');
+            sql.append('(');
+            for (int c = 0; c < COLUMN_COUNT; c++) {
+                if (c > 0) sql.append(", ");
+                sql.append('?');
+            }
+            sql.append(')');
+        }
+        return sql.append(ON_DUPLICATE).toString();
+    }
+
+    static void bindRow(PreparedStatement stmt, int offset, ChainSnapshot chain,
+                        BarchartJsonDecoder.OptionQuote quote) throws SQLException {
+        stmt.setString(offset + 1, chain.symbol());
+        stmt.setString(offset + 2, chain.cycleRange());
+        stmt.setString(offset + 3, chain.expirationDate());
+        stmt.setString(offset + 4, chain.expirationType());
+        stmt.setDate(offset + 5, chain.updateDate());
+        stmt.setTime(offset + 6, chain.updateTime());
+        stmt.setString(offset + 7, quote.contractType());
+
+        stmt.setDouble(offset + 8, quote.strike());
+        stmt.setString(offset + 9, quote.moneyness());
+        SqlNulls.setDouble(stmt, offset + 10, quote.bid());
+        SqlNulls.setDouble(stmt, offset + 11, quote.mid());
+        SqlNulls.setDouble(stmt, offset + 12, quote.ask());
+        SqlNulls.setDouble(stmt, offset + 13, quote.last());
+        SqlNulls.setDouble(stmt, offset + 14, quote.theoretical());
+        SqlNulls.setDouble(stmt, offset + 15, quote.priceChange());
+        stmt.setString(offset + 16, quote.percentChange());
+        SqlNulls.setInt(stmt, offset + 17, quote.volume());
+        SqlNulls.setInt(stmt, offset + 18, quote.openInterest());
+        stmt.setString(offset + 19, quote.openInterestChange());
+        SqlNulls.setDouble(stmt, offset + 20, quote.iv());
+        SqlNulls.setDouble(stmt, offset + 21, quote.delta());
+        SqlNulls.setDouble(stmt, offset + 22, quote.gamma());
+        SqlNulls.setDouble(stmt, offset + 23, quote.theta());
+        SqlNulls.setDouble(stmt, offset + 24, quote.vega());
+        SqlNulls.setDouble(stmt, offset + 25, quote.rho());
+        SqlNulls.setDouble(stmt, offset + 26, quote.volOiRatio());
+        SqlNulls.setDouble(stmt, offset + 27, quote.itmProbability());
+        stmt.setString(offset + 28, quote.tradeTime());
+    }
+
+    // ---- LOAD DATA LOCAL INFILE into a per-connection staging table, then one merge ----
+
+    private static void loadData(Connection conn, List<ChainSnapshot> chains) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Temporary table lives with the pooled connection: no indexes, no FK, invisible to other sessions
+            stmt.execute("CREATE TEMPORARY TABLE IF NOT EXISTS option_chain_stage AS " +
+                    "SELECT " + COLUMNS + " FROM option_chain_data LIMIT 0");
+            stmt.executeUpdate("DELETE FROM option_chain_stage");
+
+            byte[] tsv = toTsv(chains);
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(tsv));
+            stmt.executeUpdate("LOAD DATA LOCAL INFILE 'option_chain_stage.tsv' INTO TABLE option_chain_stage " +
+                    "CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n' (" + COLUMNS + ")");
+
+            stmt.executeUpdate("INSERT INTO option_chain_data(" + COLUMNS + ") " +
+                    "SELECT " + COLUMNS + " FROM option_chain_stage" + ON_DUPLICATE);
+            stmt.executeUpdate("DELETE FROM option_chain_stage");
+        }
+    }
+
+    static byte[] toTsv(List<ChainSnapshot> chains) {
+        StringBuilder sb = new StringBuilder(chains.size() * 4096);
+        for (ChainSnapshot chain : chains) {
+            for (BarchartJsonDecoder.OptionQuote q : chain.quotes()) {
+                text(sb, chain.symbol()).append('\t');
+                text(sb, chain.cycleRange()).append('\t');
+                text(sb, chain.expirationDate()).append('\t');
+                text(sb, chain.expirationType()).append('\t');
+                sb.append(chain.updateDate()).append('\t');
+                sb.append(chain.updateTime()).append('\t');
+                text(sb, q.contractType()).append('\t');
+                sb.append(q.strike()).append('\t');
+                text(sb, q.moneyness()).append('\t');
+                SqlNulls.append(sb, q.bid()).append('\t');
+                SqlNulls.append(sb, q.mid()).append('\t');
+                SqlNulls.append(sb, q.ask()).append('\t');
+                SqlNulls.append(sb, q.last()).append('\t');
+                SqlNulls.append(sb, q.theoretical()).append('\t');
+                SqlNulls.append(sb, q.priceChange()).append('\t');
+                text(sb, q.percentChange()).append('\t');
+                SqlNulls.append(sb, q.volume()).append('\t');
+                SqlNulls.append(sb, q.openInterest()).append('\t');
+                text(sb, q.openInterestChange()).append('\t');
+                SqlNulls.append(sb, q.iv()).append('\t');
+                SqlNulls.append(sb, q.delta()).append('\t');
+                SqlNulls.append(sb, q.gamma()).append('\t');
+                SqlNulls.append(sb, q.theta()).append('\t');
+                SqlNulls.append(sb, q.vega()).append('\t');
+                SqlNulls.append(sb, q.rho()).append('\t');
+                SqlNulls.append(sb, q.volOiRatio()).append('\t');
+                SqlNulls.append(sb, q.itmProbability()).append('\t');
+                text(sb, q.tradeTime()).append('\n');
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Escape for LOAD DATA's default ESCAPED BY '\\', null as \N
+    private static StringBuilder text(StringBuilder sb, String value) {
+        if (value == null) return sb.append("\\N");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,39 @@
+package apicall;
+
+import Util.NumberParser;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+// Binds the decoder's "no value" sentinels (NaN, NumberParser.NULL_INT) as SQL NULL
+final class SqlNulls {
+
+    private SqlNulls() {
+    }
+
+    static void setDouble(PreparedStatement stmt, int index, double value) throws SQLException {
+        if (Double.isNaN(value)) {
+            stmt.setNull(index, Types.DECIMAL);
+        } else {
+            stmt.setDouble(index, value);
+        }
+    }
+
+    static void setInt(PreparedStatement stmt, int index, int value) throws SQLException {
+        if (value == NumberParser.NULL_INT) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, value);
+        }
+    }
+
+    // LOAD DATA text, \N for NULL
+    static StringBuilder append(StringBuilder sb, double value) {
+        return Double.isNaN(value) ? sb.append("\\N") : sb.append(value);
+    }
+
+    static StringBuilder append(StringBuilder sb, int value) {
+        return value == NumberParser.NULL_INT ? sb.append("\\N") : sb.append(value);
+    }
+}
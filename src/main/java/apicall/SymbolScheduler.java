@@ -0,0 +1,180 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.ConnectionPool;
+import Util.CycleHelper;
+import Util.LogUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Orders the symbols of a cycle so the run ends inside its CycleHelper window: Priority=1 first, then the
+// symbols deferred by the previous run, then longest job first by the cost measured in earlier runs.
+// Finish times are predicted by replaying that order over the in-flight slots; symbols that would end
+// after the window are reported and, with scheduler.deferOverflow, left to the head of the next run.
+public class SymbolScheduler {
+
+    public record Plan(List<String> order, List<String> overBudget, long estimatedMillis) {
+    }
+
+    private record Cost(int expirations, long avgMillis, boolean deferred) {
+    }
+
+    private static boolean enabled = true;
+    private static boolean deferOverflow = false;
+    private static long safetyMillis = 60_000;
+    private static long defaultMillis = 20_000;
+    private static double alpha = 0.3;
+
+    // symbol -> {expirations, millis} of full collections in the current cycle
+    private static final Map<String, long[]> measured = new ConcurrentHashMap<>();
+
+    public static void init(ConfigLoader config) {
+        enabled = Boolean.parseBoolean(config.getProperty("scheduler.enabled", "true").trim());
+        deferOverflow = Boolean.parseBoolean(config.getProperty("scheduler.deferOverflow", "false").trim());
+        safetyMillis = Long.parseLong(config.getProperty("scheduler.safetySeconds", "60").trim()) * 1000;
+        defaultMillis = Long.parseLong(config.getProperty("scheduler.defaultSeconds", "20").trim()) * 1000;
+        alpha = Double.parseDouble(config.getProperty("scheduler.alpha", "0.3").trim());
+    }
+
+    public static Plan plan(List<String> tickers, int slots) {
+        if (!enabled || tickers.size() <= 1) {
+            return new Plan(tickers, List.of(), 0);
+        }
+        Set<String> priority;
+        Map<String, Cost> costs;
+        try {
+            priority = loadPriority();
+            costs = loadCosts();
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Scheduler could not load symbol costs, keeping list order: " + e.getMessage());
+            return new Plan(tickers, List.of(), 0);
+        }
+
+        // Symbols never measured cost as much as the typical one
+        long[] known = costs.values().stream().mapToLong(Cost::avgMillis).sorted().toArray();
+        long fallback = known.length > 0 ? known[known.length / 2] : defaultMillis;
+        Map<String, Long> estimate = new HashMap<>(tickers.size() * 2);
+        for (String ticker : tickers) {
+            Cost cost = costs.get(ticker);
+            estimate.put(ticker, cost != null ? cost.avgMillis() : fallback);
+        }
+
+        List<String> order = new ArrayList<>(tickers);
+        order.sort(Comparator
+                .comparing((String t) -> !priority.contains(t))
+                .thenComparing(t -> !(costs.containsKey(t) && costs.get(t).deferred()))
+                .thenComparing(t -> -estimate.get(t))
+                .thenComparing(t -> costs.containsKey(t) ? -costs.get(t).expirations() : 0));
+
+        ZonedDateTime now = ZonedDateTime.now(CycleHelper.NEW_YORK);
+        ZonedDateTime windowEnd = CycleHelper.getCycleEnd(now);
+        long budget = windowEnd == null ? Long.MAX_VALUE
+                : Duration.between(now, windowEnd).toMillis() - safetyMillis;
+
+        // Each symbol starts on the slot that frees up first
+        PriorityQueue<Long> slotFree = new PriorityQueue<>();
+        for (int i = 0; i < Math.max(1, Math.min(slots, order.size())); i++) {
+            slotFree.add(0L);
+        }
+        List<String> scheduled = new ArrayList<>(order.size());
+        List<String> overBudget = new ArrayList<>();
+        long makespan = 0;
+        for (String ticker : order) {
+            long start = slotFree.poll();
+            long finish = start + estimate.get(ticker);
+            if (finish > budget && !priority.contains(ticker)) {
+                overBudget.add(ticker);
+                if (deferOverflow) {
+                    slotFree.add(start);
+                    continue;
+                }
+            }
+            scheduled.add(ticker);
+            slotFree.add(finish);
+            makespan = Math.max(makespan, finish);
+        }
+
+        LogUtil.log("🗓️ Plan: " + scheduled.size() + " symbols, ~" + makespan / 60_000 + " min estimated"
+                + (windowEnd == null ? " (no window)" : ", window ends " + windowEnd.toLocalTime()
+                + " (" + Math.max(0, budget) / 60_000 + " min budget)"));
+        if (!overBudget.isEmpty()) {
+            LogUtil.log("⏰ " + overBudget.size() + " symbols do not fit the window"
+                    + (deferOverflow ? ", deferred to the next run: " : ", expected to finish late: ")
+                    + String.join(",", overBudget.subList(0, Math.min(20, overBudget.size())))
+                    + (overBudget.size() > 20 ? ",..." : ""));
+        }
+        return new Plan(scheduled, overBudget, makespan);
+    }
+
+    // Wall time of a symbol collected in full (resumed symbols are partial and not recorded)
+    public static void record(String symbol, int expirations, long millis) {
+        if (enabled) {
+            measured.put(symbol, new long[]{expirations, millis});
+        }
+    }
+
+    // Folds this cycle's measurements into the per-symbol moving average and flags the deferred symbols
+    public static void save(Plan plan) {
+        if (!enabled || (measured.isEmpty() && plan.overBudget().isEmpty())) return;
+        String costSql = "INSERT INTO symbol_cost(symbol, expirations, avg_millis, deferred) VALUES(?, ?, ?, 0) " +
+                "ON DUPLICATE KEY UPDATE expirations = VALUES(expirations), " +
+                "avg_millis = ROUND(? * VALUES(avg_millis) + (1 - ?) * avg_millis), deferred = 0";
+        String deferSql = "INSERT INTO symbol_cost(symbol, expirations, avg_millis, deferred) VALUES(?, 0, ?, 1) " +
+                "ON DUPLICATE KEY UPDATE deferred = 1";
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement cost = conn.prepareStatement(costSql);
+             PreparedStatement defer = conn.prepareStatement(deferSql)) {
+            for (Map.Entry<String, long[]> e : measured.entrySet()) {
+                cost.setString(1, e.getKey());
+                cost.setInt(2, (int) e.getValue()[0]);
+                cost.setLong(3, e.getValue()[1]);
+                cost.setDouble(4, alpha);
+                cost.setDouble(5, alpha);
+                cost.addBatch();
+            }
+            cost.executeBatch();
+            if (deferOverflow) {
+                for (String symbol : plan.overBudget()) {
+                    defer.setString(1, symbol);
+                    defer.setLong(2, defaultMillis);
+                    defer.addBatch();
+                }
+                defer.executeBatch();
+            }
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Could not save symbol costs: " + e.getMessage());
+        }
+        measured.clear();
+    }
+
+    private static Set<String> loadPriority() throws SQLException {
+        Set<String> priority = new HashSet<>();
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT ticker FROM symbol_list WHERE Priority = 1");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                priority.add(rs.getString(1));
+            }
+        }
+        return priority;
+    }
+
+    private static Map<String, Cost> loadCosts() throws SQLException {
+        Map<String, Cost> costs = new HashMap<>();
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT symbol, expirations, avg_millis, deferred FROM symbol_cost");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                costs.put(rs.getString(1), new Cost(rs.getInt(2), rs.getLong(3), rs.getBoolean(4)));
+            }
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,76 @@
+package apicall;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+// Historic Volatility / IV Rank / IV Percentile: one row per symbol and cycle in symbol_volatility_daily,
+// and stamped onto that cycle's market_data rows and summary row only, earlier days keep their own values
+public class VolatilityWriter {
+
+    // Volatility figures of one symbol for the market_data snapshot they belong to
+    public record VolatilitySnapshot(String symbol, String cycleRange, java.sql.Date updateDate, java.sql.Time updateTime,
+                                     double historicVolatility, double ivRank, double ivPercentile)
+            implements WriteBehindQueue.WriteTask {
+        @Override
+        public int rowCount() {
+            return 1;
+        }
+    }
+
+    private static final String DAILY_SQL = "INSERT INTO symbol_volatility_daily(" +
+            "symbol, update_date, Cycle_Range, update_time, Historic_Volatility, IV_Rank, IV_Percentile) " +
+            "VALUES(?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE update_time=VALUES(update_time), " +
+            "Historic_Volatility=VALUES(Historic_Volatility), IV_Rank=VALUES(IV_Rank), IV_Percentile=VALUES(IV_Percentile)";
+
+    // Served by idx_market_data_symbol_cycle_update (Note/market_data.sql): the primary key only covers
+    // (symbol, Cycle_Range), expiration_date comes before update_date. On the expiration_date partitioned
+    // table that is one index lookup per partition, not a scan of the symbol's retained days
+    private static final String MARKET_DATA_SQL = "UPDATE market_data " +
+            "SET Historic_Volatility = ?, IV_Rank = ?, IV_Percentile = ? " +
+            "WHERE symbol = ? AND Cycle_Range = ? AND update_date = ?";
+
+    private static final String SUMMARY_SQL = "UPDATE market_data_symbol_summary " +
+            "SET Historic_Volatility = ?, IV_Rank = ?, IV_Percentile = ? " +
+            "WHERE symbol = ? AND Cycle_Range = ? AND update_date = ?";
+
+    // Write the snapshots inside the caller's transaction, one JDBC batch per statement
+    public static void write(Connection conn, List<VolatilitySnapshot> snapshots) throws SQLException {
+        if (snapshots.isEmpty()) return;
+        try (PreparedStatement daily = conn.prepareStatement(DAILY_SQL);
+             PreparedStatement marketData = conn.prepareStatement(MARKET_DATA_SQL);
+             PreparedStatement summary = conn.prepareStatement(SUMMARY_SQL)) {
+            for (VolatilitySnapshot v : snapshots) {
+                daily.setString(1, v.symbol());
+                daily.setDate(2, v.updateDate());
+                daily.setString(3, v.cycleRange());
+                daily.setTime(4, v.updateTime());
+                SqlNulls.setDouble(daily, 5, v.historicVolatility());
+                SqlNulls.setDouble(daily, 6, v.ivRank());
+                SqlNulls.setDouble(daily, 7, v.ivPercentile());
+                daily.addBatch();
+
+                SqlNulls.setDouble(marketData, 1, v.historicVolatility());
+                SqlNulls.setDouble(marketData, 2, v.ivRank());
+                SqlNulls.setDouble(marketData, 3, v.ivPercentile());
+                marketData.setString(4, v.symbol());
+                marketData.setString(5, v.cycleRange());
+                marketData.setDate(6, v.updateDate());
+                marketData.addBatch();
+
+                SqlNulls.setDouble(summary, 1, v.historicVolatility());
+                SqlNulls.setDouble(summary, 2, v.ivRank());
+                SqlNulls.setDouble(summary, 3, v.ivPercentile());
+                summary.setString(4, v.symbol());
+                summary.setString(5, v.cycleRange());
+                summary.setDate(6, v.updateDate());
+                summary.addBatch();
+            }
+            daily.executeBatch();
+            marketData.executeBatch();
+            summary.executeBatch();
+        }
+    }
+}
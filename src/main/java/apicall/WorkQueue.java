@@ -0,0 +1,274 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.ConnectionPool;
+import Util.CycleHelper;
+import Util.LogUtil;
+
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Splits one cycle's symbols across collector containers through collect_work_queue. Every node seeds the
+// same rows (INSERT IGNORE, scheduler order), then claims small batches with FOR UPDATE SKIP LOCKED.
+// Leases are renewed while held; rows of a dead node come back once their lease expires, and an idle node
+// steals claimed-but-not-started symbols from the tail of the others' batches. Lease times are DB time.
+public class WorkQueue {
+
+    private static final int PENDING = 0;
+    private static final int LEASED = 1;    // claimed in a batch, not started
+    private static final int RUNNING = 2;
+    private static final int DONE = 3;
+    private static final int FAILED = 4;    // gave up after queue.maxAttempts leases
+
+    private static boolean enabled = false;
+    private static String nodeId;
+    private static int batchSize = 10;
+    private static int leaseSeconds = 120;
+    private static int maxAttempts = 3;
+    private static int pollSeconds = 15;
+
+    private final String queueName;
+    private final java.sql.Date cycleDate;
+    private final String cycleRange;
+    private final Deque<String> claimed = new ArrayDeque<>();
+    private final ScheduledExecutorService heartbeat;
+
+    public static void init(ConfigLoader config) {
+        enabled = Boolean.parseBoolean(config.getProperty("queue.enabled", "false").trim());
+        batchSize = Integer.parseInt(config.getProperty("queue.batch", "10").trim());
+        leaseSeconds = Integer.parseInt(config.getProperty("queue.leaseSeconds", "120").trim());
+        maxAttempts = Integer.parseInt(config.getProperty("queue.maxAttempts", "3").trim());
+        pollSeconds = Integer.parseInt(config.getProperty("queue.pollSeconds", "15").trim());
+        nodeId = config.getProperty("queue.nodeId", "").trim();
+        if (nodeId.isEmpty()) {
+            try {
+                nodeId = InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+            } catch (Exception e) {
+                nodeId = "node-" + ProcessHandle.current().pid();
+            }
+        }
+        if (enabled) {
+            LogUtil.log("🤝 Work queue enabled as node " + nodeId);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Seeds the cycle (idempotent across nodes) and starts renewing this node's leases
+    public static WorkQueue open(String queueName, java.sql.Date cycleDate, String cycleRange,
+                                 List<String> order) throws SQLException {
+        String sql = "INSERT IGNORE INTO collect_work_queue(queue_name, update_date, Cycle_Range, symbol, seq) " +
+                "VALUES(?, ?, ?, ?, ?)";
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < order.size(); i++) {
+                stmt.setString(1, queueName);
+                stmt.setDate(2, cycleDate);
+                stmt.setString(3, cycleRange);
+                stmt.setString(4, order.get(i));
+                stmt.setInt(5, i);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        return new WorkQueue(queueName, cycleDate, cycleRange);
+    }
+
+    private WorkQueue(String queueName, java.sql.Date cycleDate, String cycleRange) {
+        this.queueName = queueName;
+        this.cycleDate = cycleDate;
+        this.cycleRange = cycleRange;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("lease-renew").factory());
+        long every = Math.max(1, leaseSeconds / 3);
+        heartbeat.scheduleAtFixedRate(this::renew, every, every, TimeUnit.SECONDS);
+    }
+
+    // Next symbol this node owns and has started, null once the cycle is drained (or its window is over)
+    public synchronized String next() throws SQLException, InterruptedException {
+        while (true) {
+            while (!claimed.isEmpty()) {
+                String symbol = claimed.poll();
+                if (start(symbol)) return symbol;   // false: stolen by an idle node meanwhile
+            }
+            if (claim() > 0 || steal() > 0) continue;
+            if (!cycleRange.equals(CycleHelper.getCycleRange())) {
+                LogUtil.log("⌛ Cycle " + cycleRange + " is over, leaving its queue");
+                return null;
+            }
+            if (outstanding() == 0) return null;
+            // Other nodes still hold leases, pick up whatever a dead node lets expire
+            Thread.sleep(pollSeconds * 1000L);
+        }
+    }
+
+    public void complete(String symbol, boolean ok) {
+        String sql = ok
+                ? "UPDATE collect_work_queue SET state = " + DONE + " " + WHERE_OWNED
+                : "UPDATE collect_work_queue SET state = " + PENDING + ", lease_owner = NULL " + WHERE_OWNED;
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindOwned(stmt, 1, symbol);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Could not complete " + symbol + " in work queue: " + e.getMessage());
+        }
+    }
+
+    // Hands back claimed symbols this node never started
+    public synchronized void close() {
+        heartbeat.shutdownNow();
+        String sql = "UPDATE collect_work_queue SET state = " + PENDING + ", lease_owner = NULL " +
+                "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? AND lease_owner = ? AND state = " + LEASED;
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindCycle(stmt, 1);
+            stmt.setString(4, nodeId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Could not release work queue leases: " + e.getMessage());
+        }
+        claimed.clear();
+    }
+
+    private static final String WHERE_OWNED =
+            "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? AND symbol = ? AND lease_owner = ?";
+
+    private boolean start(String symbol) throws SQLException {
+        String sql = "UPDATE collect_work_queue SET state = " + RUNNING + ", " +
+                "lease_until = NOW(3) + INTERVAL ? SECOND " + WHERE_OWNED + " AND state = " + LEASED;
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, leaseSeconds);
+            bindOwned(stmt, 2, symbol);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    // Pending rows in scheduler order, plus rows whose lease ran out
+    private int claim() throws SQLException {
+        String select = "SELECT symbol, attempts FROM collect_work_queue " +
+                "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? " +
+                "AND (state = " + PENDING + " OR (state IN (" + LEASED + ", " + RUNNING + ") AND lease_until < NOW(3))) " +
+                "ORDER BY seq LIMIT ? FOR UPDATE SKIP LOCKED";
+        return lease(select, null, batchSize);
+    }
+
+    // Idle node: take not-yet-started symbols from the end of another node's batch
+    private int steal() throws SQLException {
+        String select = "SELECT symbol, attempts FROM collect_work_queue " +
+                "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? " +
+                "AND state = " + LEASED + " AND lease_owner <> ? " +
+                "ORDER BY seq DESC LIMIT ? FOR UPDATE SKIP LOCKED";
+        int stolen = lease(select, nodeId, Math.max(1, batchSize / 2));
+        if (stolen > 0) {
+            LogUtil.log("🦝 Stole " + stolen + " symbols from other nodes");
+        }
+        return stolen;
+    }
+
+    private int lease(String select, String otherThan, int limit) throws SQLException {
+        List<String> leased = new ArrayList<>();
+        List<String> exhausted = new ArrayList<>();
+        try (Connection conn = ConnectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(select)) {
+                    bindCycle(stmt, 1);
+                    int next = 4;
+                    if (otherThan != null) stmt.setString(next++, otherThan);
+                    stmt.setInt(next, limit);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            (rs.getInt(2) >= maxAttempts ? exhausted : leased).add(rs.getString(1));
+                        }
+                    }
+                }
+                String update = "UPDATE collect_work_queue SET state = " + LEASED + ", lease_owner = ?, " +
+                        "lease_until = NOW(3) + INTERVAL ? SECOND, attempts = attempts + 1 " +
+                        "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? AND symbol = ?";
+                String fail = "UPDATE collect_work_queue SET state = " + FAILED + ", lease_owner = NULL " +
+                        "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? AND symbol = ?";
+                try (PreparedStatement up = conn.prepareStatement(update);
+                     PreparedStatement down = conn.prepareStatement(fail)) {
+                    for (String symbol : leased) {
+                        up.setString(1, nodeId);
+                        up.setInt(2, leaseSeconds);
+                        bindCycle(up, 3);
+                        up.setString(6, symbol);
+                        up.addBatch();
+                    }
+                    for (String symbol : exhausted) {
+                        bindCycle(down, 1);
+                        down.setString(4, symbol);
+                        down.addBatch();
+                    }
+                    up.executeBatch();
+                    down.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        if (!exhausted.isEmpty()) {
+            LogUtil.log("❌ Giving up on " + exhausted + " after " + maxAttempts + " leases");
+        }
+        claimed.addAll(leased);
+        return leased.size() + exhausted.size();
+    }
+
+    // Rows some node may still finish or let expire
+    private int outstanding() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM collect_work_queue WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? " +
+                "AND state IN (" + PENDING + ", " + LEASED + ", " + RUNNING + ")";
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindCycle(stmt, 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void renew() {
+        String sql = "UPDATE collect_work_queue SET lease_until = NOW(3) + INTERVAL ? SECOND " +
+                "WHERE queue_name = ? AND update_date = ? AND Cycle_Range = ? AND lease_owner = ? " +
+                "AND state IN (" + LEASED + ", " + RUNNING + ")";
+        try (Connection conn = ConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, leaseSeconds);
+            bindCycle(stmt, 2);
+            stmt.setString(5, nodeId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            LogUtil.log("⚠️ Lease renewal failed: " + e.getMessage());
+        }
+    }
+
+    private void bindCycle(PreparedStatement stmt, int from) throws SQLException {
+        stmt.setString(from, queueName);
+        stmt.setDate(from + 1, cycleDate);
+        stmt.setString(from + 2, cycleRange);
+    }
+
+    private void bindOwned(PreparedStatement stmt, int from, String symbol) throws SQLException {
+        bindCycle(stmt, from);
+        stmt.setString(from + 3, symbol);
+        stmt.setString(from + 4, nodeId);
+    }
+}
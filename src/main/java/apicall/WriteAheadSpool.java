@@ -0,0 +1,388 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.LogUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only, memory-mapped spool in front of the write-behind lanes: every task is on disk before it is queued,
+// and a segment file is deleted only once every record in it has been committed. Leftover segments
+// (crash, kill, MySQL down at shutdown) are replayed on the next start; the writes are idempotent upserts.
+public class WriteAheadSpool {
+
+    // One spool file; acked records count down, the file goes away when it is sealed and fully acked
+    public static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean sealed = false;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        public void ack() {
+            if (outstanding.decrementAndGet() == 0 && sealed) {
+                delete();
+            }
+        }
+
+        private void seal() {
+            sealed = true;
+            if (outstanding.get() == 0) {
+                delete();
+            }
+        }
+
+        private synchronized void delete() {
+            try {
+                channel.close();
+                if (Files.deleteIfExists(path)) {
+                    segmentsDeleted.incrementAndGet();
+                }
+            } catch (IOException e) {
+                LogUtil.log("⚠️ Could not delete spool segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // A spooled task read back at startup, with the segment its ack belongs to
+    public record Replay(WriteBehindQueue.WriteTask task, Segment segment) {
+    }
+
+    private static final int MAGIC = 0x42435350;   // "BCSP"
+    private static final int HEADER_BYTES = 8;     // magic + version
+    private static final int VERSION = 1;
+
+    private static final byte MARKET_DATA = 1;
+    private static final byte OPTION_CHAIN = 2;
+    private static final byte VOLATILITY = 3;
+    private static final byte CHECKPOINT = 4;
+
+    private static boolean enabled = false;
+    private static Path dir;
+    private static long segmentBytes = 64L << 20;
+    private static boolean force = false;
+    private static FileLock dirLock;
+
+    private static Segment current;
+    private static long nextSegmentId = 1;
+
+    private static final AtomicLong recordsAppended = new AtomicLong();
+    private static final AtomicLong bytesAppended = new AtomicLong();
+    private static final AtomicLong segmentsDeleted = new AtomicLong();
+
+    // Opens the spool and returns whatever a previous process left unwritten, oldest first
+    public static synchronized List<Replay> open(ConfigLoader config) throws IOException {
+        enabled = Boolean.parseBoolean(config.getProperty("spool.enabled", "true").trim());
+        if (!enabled) return List.of();
+        dir = Paths.get(config.getProperty("spool.dir", "spool").trim());
+        segmentBytes = Long.parseLong(config.getProperty("spool.segment.mb", "64").trim()) << 20;
+        force = Boolean.parseBoolean(config.getProperty("spool.force", "false").trim());
+        Files.createDirectories(dir);
+
+        // Cron can overlap two runs: only one process owns (and replays) the spool directory
+        FileChannel lockChannel = FileChannel.open(dir.resolve("spool.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        dirLock = lockChannel.tryLock();
+        if (dirLock == null) {
+            lockChannel.close();
+            enabled = false;
+            LogUtil.log("⚠️ Spool " + dir.toAbsolutePath() + " is owned by another process, running without spool");
+            return List.of();
+        }
+
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.list(dir)) {
+            leftovers = files.filter(p -> p.getFileName().toString().matches("spool-\\d+\\.wal")).sorted().toList();
+        }
+        List<Replay> replays = new ArrayList<>();
+        for (Path path : leftovers) {
+            nextSegmentId = Math.max(nextSegmentId, segmentId(path) + 1);
+            replays.addAll(readSegment(path));
+        }
+        LogUtil.log("💾 Spool " + dir.toAbsolutePath() + ": " + replays.size() + " records to replay from "
+                + leftovers.size() + " segments");
+        return replays;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Persist the task; the returned segment must be acked once the task is committed (null when disabled)
+    public static Segment append(WriteBehindQueue.WriteTask task) throws IOException {
+        if (!enabled) return null;
+        byte[] payload = encode(task);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (WriteAheadSpool.class) {
+            int needed = 8 + payload.length;
+            if (current == null || current.buffer.remaining() < needed + 4) {   // keep room for the 0 terminator
+                roll(needed + 4);
+            }
+            MappedByteBuffer buffer = current.buffer;
+            // Length last: a torn record reads back as the zero terminator
+            int start = buffer.position();
+            buffer.putInt(start + 4, (int) crc.getValue());
+            buffer.put(start + 8, payload);
+            buffer.putInt(start, payload.length);
+            buffer.position(start + needed);
+            if (force) buffer.force();
+            current.outstanding.incrementAndGet();
+            recordsAppended.incrementAndGet();
+            bytesAppended.addAndGet(needed);
+            return current;
+        }
+    }
+
+    public static synchronized void close() {
+        if (current != null) {
+            current.seal();
+            current = null;
+        }
+        try {
+            if (dirLock != null) {
+                dirLock.release();
+                dirLock.channel().close();
+                dirLock = null;
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static String stats() {
+        return "spool records=" + recordsAppended.get() + ", bytes=" + bytesAppended.get()
+                + ", segments retired=" + segmentsDeleted.get();
+    }
+
+    private static void roll(int minBytes) throws IOException {
+        if (current != null) {
+            current.seal();
+        }
+        Path path = dir.resolve(String.format("spool-%016d.wal", nextSegmentId++));
+        long size = Math.max(segmentBytes, HEADER_BYTES + minBytes);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        current = new Segment(path, channel, buffer);
+    }
+
+    private static List<Replay> readSegment(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        Segment segment = new Segment(path, channel, buffer);
+        List<Replay> replays = new ArrayList<>();
+
+        if (buffer.remaining() >= HEADER_BYTES && buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int expectedCrc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) break;    // end of log or torn tail
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    LogUtil.log("⚠️ Spool " + path.getFileName() + ": bad checksum, ignoring the rest of the segment");
+                    break;
+                }
+                try {
+                    replays.add(new Replay(decode(ByteBuffer.wrap(payload)), segment));
+                } catch (RuntimeException e) {
+                    LogUtil.log("⚠️ Spool " + path.getFileName() + ": unreadable record skipped: " + e.getMessage());
+                }
+            }
+        }
+        segment.outstanding.set(replays.size());
+        segment.seal();
+        return replays;
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring("spool-".length(), name.length() - ".wal".length()));
+    }
+
+    // ---- record codec ----
+
+    private static byte[] encode(WriteBehindQueue.WriteTask task) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + task.rowCount() * 160);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (task instanceof MarketDataWriter.MarketDataSnapshot s) {
+            out.writeByte(MARKET_DATA);
+            writeString(out, s.symbol());
+            writeString(out, s.cycleRange());
+            out.writeLong(s.updateDate().toLocalDate().toEpochDay());
+            out.writeInt(s.updateTime().toLocalTime().toSecondOfDay());
+            out.writeInt(s.expirations().size());
+            for (BarchartJsonDecoder.ExpirationQuote e : s.expirations()) {
+                writeString(out, e.expirationDate());
+                writeString(out, e.expirationType());
+                out.writeInt(e.daysToExpiration());
+                out.writeInt(e.putVolume());
+                out.writeInt(e.callVolume());
+                out.writeInt(e.totalVolume());
+                out.writeDouble(e.putCallVolumeRatio());
+                out.writeInt(e.putOpenInterest());
+                out.writeInt(e.callOpenInterest());
+                out.writeInt(e.totalOpenInterest());
+                out.writeDouble(e.putCallOpenInterestRatio());
+                out.writeDouble(e.averageVolatility());
+                out.writeDouble(e.baseLastPrice());
+                out.writeDouble(e.impliedMove());
+                out.writeDouble(e.impliedMovePercent());
+                out.writeDouble(e.baseUpperPrice());
+                out.writeDouble(e.baseLowerPrice());
+            }
+        } else if (task instanceof OptionChainWriter.ChainSnapshot c) {
+            out.writeByte(OPTION_CHAIN);
+            writeString(out, c.symbol());
+            writeString(out, c.cycleRange());
+            writeString(out, c.expirationDate());
+            writeString(out, c.expirationType());
+            out.writeLong(c.updateDate().toLocalDate().toEpochDay());
+            out.writeInt(c.updateTime().toLocalTime().toSecondOfDay());
+            out.writeInt(c.quotes().size());
+            for (BarchartJsonDecoder.OptionQuote q : c.quotes()) {
+                writeString(out, q.contractType());
+                out.writeDouble(q.strike());
+                writeString(out, q.moneyness());
+                out.writeDouble(q.bid());
+                out.writeDouble(q.mid());
+                out.writeDouble(q.ask());
+                out.writeDouble(q.last());
+                out.writeDouble(q.theoretical());
+                out.writeDouble(q.priceChange());
+                writeString(out, q.percentChange());
+                out.writeInt(q.volume());
+                out.writeInt(q.openInterest());
+                writeString(out, q.openInterestChange());
+                out.writeDouble(q.iv());
+                out.writeDouble(q.delta());
+                out.writeDouble(q.gamma());
+                out.writeDouble(q.theta());
+                out.writeDouble(q.vega());
+                out.writeDouble(q.rho());
+                out.writeDouble(q.volOiRatio());
+                out.writeDouble(q.itmProbability());
+                writeString(out, q.tradeTime());
+            }
+        } else if (task instanceof VolatilityWriter.VolatilitySnapshot v) {
+            out.writeByte(VOLATILITY);
+            writeString(out, v.symbol());
+            writeString(out, v.cycleRange());
+            out.writeLong(v.updateDate().toLocalDate().toEpochDay());
+            out.writeInt(v.updateTime().toLocalTime().toSecondOfDay());
+            out.writeDouble(v.historicVolatility());
+            out.writeDouble(v.ivRank());
+            out.writeDouble(v.ivPercentile());
+        } else if (task instanceof CollectCheckpoint.Mark m) {
+            out.writeByte(CHECKPOINT);
+            writeString(out, m.symbol());
+            writeString(out, m.cycleRange());
+            out.writeLong(m.updateDate().toLocalDate().toEpochDay());
+            out.writeInt(m.stages());
+        } else {
+            throw new IOException("No spool encoding for " + task.getClass().getSimpleName());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static WriteBehindQueue.WriteTask decode(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case MARKET_DATA -> {
+                String symbol = readString(in);
+                String cycleRange = readString(in);
+                java.sql.Date updateDate = readDate(in);
+                java.sql.Time updateTime = readTime(in);
+                int count = in.getInt();
+                List<BarchartJsonDecoder.ExpirationQuote> expirations = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    expirations.add(new BarchartJsonDecoder.ExpirationQuote(readString(in), readString(in),
+                            in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getDouble(),
+                            in.getInt(), in.getInt(), in.getInt(), in.getDouble(), in.getDouble(),
+                            in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble()));
+                }
+                return new MarketDataWriter.MarketDataSnapshot(symbol, cycleRange, updateDate, updateTime, expirations);
+            }
+            case OPTION_CHAIN -> {
+                String symbol = readString(in);
+                String cycleRange = readString(in);
+                String expirationDate = readString(in);
+                String expirationType = readString(in);
+                java.sql.Date updateDate = readDate(in);
+                java.sql.Time updateTime = readTime(in);
+                int count = in.getInt();
+                List<BarchartJsonDecoder.OptionQuote> quotes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    quotes.add(new BarchartJsonDecoder.OptionQuote(readString(in), in.getDouble(), readString(in),
+                            in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(),
+                            in.getDouble(), readString(in), in.getInt(), in.getInt(), readString(in),
+                            in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(),
+                            in.getDouble(), in.getDouble(), in.getDouble(), readString(in)));
+                }
+                return new OptionChainWriter.ChainSnapshot(symbol, cycleRange, expirationDate, expirationType,
+                        updateDate, updateTime, quotes);
+            }
+            case VOLATILITY -> {
+                return new VolatilityWriter.VolatilitySnapshot(readString(in), readString(in), readDate(in), readTime(in),
+                        in.getDouble(), in.getDouble(), in.getDouble());
+            }
+            case CHECKPOINT -> {
+                return new CollectCheckpoint.Mark(readString(in), readString(in), readDate(in), in.getInt());
+            }
+            default -> throw new IllegalArgumentException("unknown record type " + type);
+        }
+    }
+
+    // Length-prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static java.sql.Date readDate(ByteBuffer in) {
+        return java.sql.Date.valueOf(LocalDate.ofEpochDay(in.getLong()));
+    }
+
+    private static java.sql.Time readTime(ByteBuffer in) {
+        return java.sql.Time.valueOf(LocalTime.ofSecondOfDay(in.getInt()));
+    }
+}
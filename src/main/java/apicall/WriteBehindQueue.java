@@ -0,0 +1,332 @@
+package apicall;
+
+import Util.ConfigLoader;
+import Util.ConnectionPool;
+import Util.LogUtil;
+import Util.Metrics;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded hand-off between the HTTP fetchers and a few dedicated MySQL writer threads.
+// Tasks of one symbol always land in the same lane, so market_data rows commit before their option chains.
+public class WriteBehindQueue {
+
+    public interface WriteTask {
+        String symbol();
+
+        int rowCount();
+    }
+
+    // Queued task plus its completion
+    private record Entry(WriteTask task, CompletableFuture<Void> done) {
+    }
+
+    private static Lane[] lanes = new Lane[0];
+    private static int flushRows = 5_000;
+    private static long flushMillis = 2_000;
+    private static long idleTimeoutMillis = 600_000;
+    private static volatile boolean closing = false;
+    private static volatile boolean leftInSpool = false;    // MySQL down while closing: stop trying, the spool keeps it
+
+    // symbol -> "cycleRange|updateDate" of the latest cycle in which one of its data tasks was rejected
+    private static final Map<String, String> rejected = new ConcurrentHashMap<>();
+
+    private static final AtomicLong pending = new AtomicLong();
+    private static final AtomicLong blockedNanos = new AtomicLong();
+    private static final AtomicLong transactions = new AtomicLong();
+    private static final AtomicLong rowsWritten = new AtomicLong();
+    private static final Metrics.Histogram COMMIT = Metrics.histogram("stage_seconds", "stage", "db_commit");
+
+    static {
+        Metrics.gauge("write_behind_pending_tasks", pending::get);
+    }
+
+    public static synchronized void init(ConfigLoader config) {
+        if (lanes.length > 0) return;
+        int writers = Integer.parseInt(config.getProperty("writer.threads", "2").trim());
+        int capacity = Integer.parseInt(config.getProperty("writer.queue.capacity", "2000").trim());
+        flushRows = Integer.parseInt(config.getProperty("ingest.flush.rows", "5000").trim());
+        flushMillis = Long.parseLong(config.getProperty("ingest.flush.millis", "2000").trim());
+        idleTimeoutMillis = Long.parseLong(config.getProperty("writer.idleTimeoutSeconds", "600").trim()) * 1000;
+
+        lanes = new Lane[Math.max(1, writers)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, Math.max(1, capacity / lanes.length));
+            lanes[i].start();
+        }
+        LogUtil.log("✍️ Write-behind: " + lanes.length + " writers, queue capacity " + capacity
+                + ", flush at " + flushRows + " rows or " + flushMillis + " ms");
+
+        // Whatever the previous process spooled but never committed goes first, in spool order
+        try {
+            for (WriteAheadSpool.Replay replay : WriteAheadSpool.open(config)) {
+                ackWhenWritten(enqueue(replay.task()), replay.segment());
+            }
+        } catch (IOException e) {
+            LogUtil.log("⚠️ Spool unavailable, writes are in memory only: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Spooled to disk first, then queued. Blocks while the lane is full: that is the backpressure
+    // that slows the fetchers down
+    public static CompletableFuture<Void> submit(WriteTask task) throws InterruptedException {
+        WriteAheadSpool.Segment segment = null;
+        try {
+            segment = WriteAheadSpool.append(task);
+        } catch (IOException e) {
+            LogUtil.log("⚠️ Spool append failed for " + task.symbol() + ", queued in memory only: " + e.getMessage());
+        }
+        CompletableFuture<Void> done = enqueue(task);
+        ackWhenWritten(done, segment);
+        return done;
+    }
+
+    // Committed, or rejected by MySQL for good: either way the spool no longer needs the record.
+    // Tasks abandoned at shutdown stay in the spool for the next start.
+    private static void ackWhenWritten(CompletableFuture<Void> done, WriteAheadSpool.Segment segment) {
+        if (segment == null) return;
+        done.whenComplete((v, e) -> {
+            if (e == null || e instanceof SQLException) segment.ack();
+        });
+    }
+
+    private static CompletableFuture<Void> enqueue(WriteTask task) throws InterruptedException {
+        if (closing) throw new IllegalStateException("Write-behind queue is closed");
+        Lane lane = lanes[Math.floorMod(task.symbol().hashCode(), lanes.length)];
+        Entry entry = new Entry(task, new CompletableFuture<>());
+        pending.incrementAndGet();
+        if (!lane.queue.offer(entry)) {
+            long start = System.nanoTime();
+            try {
+                lane.queue.put(entry);
+            } catch (InterruptedException e) {
+                pending.decrementAndGet();
+                throw e;
+            }
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+        return entry.done();
+    }
+
+    // Wait until everything submitted so far is committed (or given up on), at most writer.idleTimeoutSeconds:
+    // while MySQL is down the writers keep retrying what the spool holds, the caller moves on meanwhile
+    public static boolean awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        while (pending.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                LogUtil.log("⚠️ " + pending.get() + " write tasks still pending after " + idleTimeoutMillis / 1000 + " s"
+                        + (WriteAheadSpool.isEnabled() ? ", they stay in the spool until MySQL takes them" : ""));
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    // Stop accepting work, let the writers drain their lanes and exit
+    public static synchronized void close() {
+        if (lanes.length == 0) return;
+        closing = true;
+        for (Lane lane : lanes) {
+            try {
+                lane.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        WriteAheadSpool.close();
+        LogUtil.log("✍️ " + stats());
+    }
+
+    public static String stats() {
+        return "write-behind transactions=" + transactions.get() + ", rows=" + rowsWritten.get()
+                + ", fetchers blocked " + blockedNanos.get() / 1_000_000 + " ms"
+                + (WriteAheadSpool.isEnabled() ? ", " + WriteAheadSpool.stats() : "");
+    }
+
+    private static class Lane extends Thread {
+        private final BlockingQueue<Entry> queue;
+
+        Lane(int index, int capacity) {
+            super("db-writer-" + index);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Entry> batch = new ArrayList<>();
+            while (true) {
+                try {
+                    Entry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (closing) return;
+                        continue;
+                    }
+                    batch.add(first);
+                    collect(batch);
+                    writeWithRetry(batch);
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    for (Entry entry : batch) {
+                        entry.done().completeExceptionally(new IllegalStateException("Write-behind task not written"));
+                    }
+                    pending.addAndGet(-batch.size());
+                    batch.clear();
+                }
+            }
+        }
+
+        // Coalesce queued tasks (across symbols) until the batch is big enough or flushMillis passed
+        private void collect(List<Entry> batch) throws InterruptedException {
+            int rows = batch.get(0).task().rowCount();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+            while (rows < flushRows) {
+                Entry next = queue.poll();
+                if (next == null) {
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0 || closing) break;
+                    next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                }
+                batch.add(next);
+                rows += next.task().rowCount();
+            }
+        }
+
+        private void writeWithRetry(List<Entry> batch) throws InterruptedException {
+            if (leftInSpool) return;
+            int maxAttempts = 3;
+            SQLException last;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    writeBatch(batch);
+                    for (Entry entry : batch) {
+                        entry.done().complete(null);
+                    }
+                    return;
+                } catch (SQLException e) {
+                    last = e;
+                    if (!isTransient(e)) {
+                        // Rejected for good: one bad task must not take the other symbols of the batch with it
+                        split(batch, e);
+                        return;
+                    }
+                    LogUtil.log("❌ Write-behind transaction failed (attempt " + attempt + "): " + e.getMessage());
+                    // Spooled rows outlive a MySQL stall or restart: keep retrying connection-level failures
+                    boolean keepTrying = WriteAheadSpool.isEnabled() && !closing;
+                    if (attempt >= maxAttempts && !keepTrying) break;
+                    Thread.sleep(Math.min(30_000L, 1000L * attempt));
+                }
+            }
+            int rows = batch.stream().mapToInt(e -> e.task().rowCount()).sum();
+            if (WriteAheadSpool.isEnabled()) {
+                leftInSpool = true;
+                LogUtil.log("⚠️ MySQL unavailable at shutdown, " + batch.size() + " write tasks (" + rows
+                        + " rows) left in the spool for the next start");
+                return;
+            }
+            LogUtil.log("⚠️ Dropping " + batch.size() + " write tasks (" + rows + " rows) after " + maxAttempts + " attempts");
+            for (Entry entry : batch) {
+                entry.done().completeExceptionally(last);
+            }
+        }
+
+        // Bisects in queue order (a symbol's market_data still commits before its chains) until the
+        // rejected task is alone; only that one is dropped, and its symbol's checkpoint marks with it
+        private void split(List<Entry> batch, SQLException e) throws InterruptedException {
+            if (batch.size() > 1) {
+                int half = batch.size() / 2;
+                writeWithRetry(new ArrayList<>(batch.subList(0, half)));
+                writeWithRetry(new ArrayList<>(batch.subList(half, batch.size())));
+                return;
+            }
+            WriteTask task = batch.get(0).task();
+            LogUtil.log("⚠️ Dropping " + task.getClass().getSimpleName() + " of " + task.symbol() + " ("
+                    + task.rowCount() + " rows), rejected by MySQL: " + e.getMessage());
+            String cycle = cycleOf(task);
+            if (cycle != null && !(task instanceof CollectCheckpoint.Mark)) {
+                rejected.put(task.symbol(), cycle);
+            }
+            batch.get(0).done().completeExceptionally(e);
+        }
+
+        private static boolean isTransient(SQLException e) {
+            return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                    || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+        }
+
+        // One transaction: parents (market_data) first, then option chains and volatility, checkpoint marks last
+        private void writeBatch(List<Entry> batch) throws SQLException {
+            List<MarketDataWriter.MarketDataSnapshot> marketData = new ArrayList<>();
+            List<OptionChainWriter.ChainSnapshot> chains = new ArrayList<>();
+            List<VolatilityWriter.VolatilitySnapshot> volatility = new ArrayList<>();
+            List<CollectCheckpoint.Mark> marks = new ArrayList<>();
+            int rows = 0;
+            for (Entry entry : batch) {
+                WriteTask task = entry.task();
+                if (task instanceof MarketDataWriter.MarketDataSnapshot snapshot) marketData.add(snapshot);
+                else if (task instanceof OptionChainWriter.ChainSnapshot chain) chains.add(chain);
+                else if (task instanceof VolatilityWriter.VolatilitySnapshot v) volatility.add(v);
+                else if (task instanceof CollectCheckpoint.Mark mark) {
+                    // A stage whose rows were rejected is not done: no mark, the next run collects the symbol again
+                    if (cycleOf(mark).equals(rejected.get(mark.symbol()))) continue;
+                    marks.add(mark);
+                }
+                rows += task.rowCount();
+            }
+
+            // Rows identical to the last committed write are dropped; fingerprints are kept only after commit
+            ChainFingerprintCache.Pending fingerprints = new ChainFingerprintCache.Pending();
+            chains = ChainFingerprintCache.filter(chains, fingerprints);
+
+            long start = System.nanoTime();
+            try (Connection conn = ConnectionPool.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    MarketDataWriter.write(conn, marketData);
+                    OptionChainWriter.write(conn, chains);
+                    VolatilityWriter.write(conn, volatility);
+                    CollectCheckpoint.write(conn, marks);
+                    conn.commit();
+                    ChainFingerprintCache.commit(fingerprints);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            COMMIT.since(start);
+            transactions.incrementAndGet();
+            rowsWritten.addAndGet(rows);
+        }
+    }
+
+    private static String cycleOf(WriteTask task) {
+        return switch (task) {
+            case MarketDataWriter.MarketDataSnapshot t -> t.cycleRange() + "|" + t.updateDate();
+            case OptionChainWriter.ChainSnapshot t -> t.cycleRange() + "|" + t.updateDate();
+            case VolatilityWriter.VolatilitySnapshot t -> t.cycleRange() + "|" + t.updateDate();
+            case CollectCheckpoint.Mark t -> t.cycleRange() + "|" + t.updateDate();
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NumberParserTest {
+
+    private static void assertNaN(String text) {
+        assertTrue(Double.isNaN(NumberParser.parseDouble(text)), "expected NaN for \"" + text + "\"");
+    }
+
+    @Test
+    void doubleSeparatorsAndSigns() {
+        assertEquals(12345.5, NumberParser.parseDouble("12,345.50"));
+        assertEquals(1234567.0, NumberParser.parseDouble("1,234,567"));
+        assertEquals(0.12, NumberParser.parseDouble("+0.12"));
+        assertEquals(-3.0, NumberParser.parseDouble("-3"));
+        assertEquals(-1.25, NumberParser.parseDouble(" -1.25 "));
+        assertEquals(0.5, NumberParser.parseDouble(".5"));
+    }
+
+    @Test
+    void doublePercentIsDroppedNotDivided() {
+        assertEquals(18.42, NumberParser.parseDouble("18.42%"));
+        assertEquals(18.42, NumberParser.parseDouble("18.42 %"));
+        assertEquals(-4.5, NumberParser.parseDouble("-4.50% "));
+        assertNaN("%");
+        assertNaN(" % ");
+        assertEquals(0.1842, NumberParser.parseVolatility("18.42%"), 1e-12);
+    }
+
+    @Test
+    void doubleUnchangedAndMissing() {
+        assertEquals(0.0, NumberParser.parseDouble("unch"));
+        assertEquals(0.0, NumberParser.parseDouble("UNCH"));
+        assertNaN(null);
+        assertNaN("");
+        assertNaN("   ");
+        assertNaN("N/A");
+        assertNaN("-");
+        assertNaN("12abc");
+        assertNaN("1.2.3");
+        assertEquals(0.0, NumberParser.parseDoubleSafe("N/A"));
+    }
+
+    @Test
+    void doubleExponents() {
+        assertEquals(1500.0, NumberParser.parseDouble("1.5e3"));
+        assertEquals(0.01, NumberParser.parseDouble("1E-2"));
+        assertEquals(2.5, NumberParser.parseDouble("25e-1"));
+        assertNaN("1e");
+        assertNaN("1e+");
+        assertNaN("1e2x");
+        assertNaN("1e400");
+        assertEquals(0.0, NumberParser.parseDouble("1e-400"));
+    }
+
+    @Test
+    void doubleMatchesJdkRounding() {
+        String[] samples = {"0.1", "582.35", "0.838649", "123456789012345678901", "9007199254740993",
+                "3.141592653589793238", "1.7976931348623157e308", "4.9e-324"};
+        for (String s : samples) {
+            assertEquals(Double.parseDouble(s), NumberParser.parseDouble(s));
+        }
+    }
+
+    @Test
+    void doubleOverCharSlice() {
+        char[] buf = "xx18.42%yy".toCharArray();
+        assertEquals(18.42, NumberParser.parseDouble(buf, 2, 6));
+        assertEquals(18.42, NumberParser.parseDouble("[18.42]", 1, 6));
+    }
+
+    @Test
+    void intSeparatorsAndSigns() {
+        assertEquals(1234, NumberParser.parseInt("1,234"));
+        assertEquals(35, NumberParser.parseInt("+35"));
+        assertEquals(-5000, NumberParser.parseInt("-5,000"));
+        assertEquals(0, NumberParser.parseInt("0"));
+        assertEquals(0, NumberParser.parseInt("unch"));
+        assertEquals(Integer.MAX_VALUE, NumberParser.parseInt("2,147,483,647"));
+    }
+
+    @Test
+    void intFractionsOnlyWhenZero() {
+        assertEquals(1234, NumberParser.parseInt("1,234.00"));
+        assertEquals(7, NumberParser.parseInt("7."));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("12.5"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("12.05"));
+    }
+
+    @Test
+    void intOverflowAndGarbageAreNull() {
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("2,147,483,648"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("99999999999999999999"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("1e3"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("N/A"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt("+"));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt(""));
+        assertEquals(NumberParser.NULL_INT, NumberParser.parseInt(null));
+        assertEquals(0, NumberParser.parseIntSafe("N/A"));
+    }
+}
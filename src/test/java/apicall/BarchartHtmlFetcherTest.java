@@ -0,0 +1,71 @@
+package apicall;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarchartHtmlFetcherTest {
+
+    // put-call-ratios layout with decoy labels in meta tags, scripts, embedded JSON, a comment and non-span markup
+    private static byte[] page() throws IOException {
+        try (InputStream in = BarchartHtmlFetcherTest.class.getResourceAsStream("/fixtures/put-call-ratios.html")) {
+            assertNotNull(in, "fixtures/put-call-ratios.html");
+            return in.readAllBytes();
+        }
+    }
+
+    private static BarchartHtmlFetcher.Volatility extract(String html) throws IOException {
+        return BarchartHtmlFetcher.extractVolatility(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void readsTheToolbarValuesOnly() throws IOException {
+        BarchartHtmlFetcher.Volatility v = BarchartHtmlFetcher.extractVolatility(new ByteArrayInputStream(page()));
+        assertEquals(14.97, v.historicVolatility());
+        assertEquals(23.51, v.ivRank());
+        assertEquals(41.0, v.ivPercentile());
+    }
+
+    @Test
+    void tagsSplitAcrossReadsStillMatch() throws IOException {
+        byte[] page = page();
+        // A few bytes per read so labels, tags and values straddle chunk boundaries
+        InputStream trickle = new ByteArrayInputStream(page) {
+            private int step;
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + step++ % 7));
+            }
+        };
+        BarchartHtmlFetcher.Volatility v = BarchartHtmlFetcher.extractVolatility(trickle);
+        assertEquals(14.97, v.historicVolatility());
+        assertEquals(23.51, v.ivRank());
+        assertEquals(41.0, v.ivPercentile());
+    }
+
+    @Test
+    void labelsOutsideSpanMarkupAreIgnored() throws IOException {
+        assertNull(extract("<meta content=\"IV Rank: <strong>1%</strong>\">"
+                + "<script>var s = '<span>IV Rank:</span><span><strong>2%</strong></span>';</script>"
+                + "<div>IV Rank:</div><span><strong>3%</strong></span>"
+                + "<span>IV Rank:</span><br><span><strong>4%</strong></span>"));
+    }
+
+    @Test
+    void missingLabelIsNaN() throws IOException {
+        BarchartHtmlFetcher.Volatility v = extract(
+                "<span>IV Rank:</span> <span><strong class=\"x\">23.51%</strong></span>");
+        assertTrue(Double.isNaN(v.historicVolatility()));
+        assertEquals(23.51, v.ivRank());
+        assertTrue(Double.isNaN(v.ivPercentile()));
+    }
+}